@@ -20,6 +20,7 @@ import com.afollestad.materialdialogs.MaterialDialog;
 import com.github.tianma8023.smscode.BuildConfig;
 import com.github.tianma8023.smscode.R;
 import com.github.tianma8023.smscode.app.base.BasePreferenceFragment;
+import com.github.tianma8023.smscode.app.diagnostics.DiagnosticsActivity;
 import com.github.tianma8023.smscode.app.permissions.PermItemAdapter;
 import com.github.tianma8023.smscode.app.permissions.PermItemContainer;
 import com.github.tianma8023.smscode.app.record.CodeRecordsActivity;
@@ -68,12 +69,13 @@ import static com.github.tianma8023.smscode.constant.PrefConst.DONATE_BY_ALIPAY;
 import static com.github.tianma8023.smscode.constant.PrefConst.ENABLE;
 import static com.github.tianma8023.smscode.constant.PrefConst.ENTRY_AUTO_INPUT_CODE;
 import static com.github.tianma8023.smscode.constant.PrefConst.ENTRY_CODE_RECORDS;
+import static com.github.tianma8023.smscode.constant.PrefConst.ENTRY_DIAGNOSTICS;
 import static com.github.tianma8023.smscode.constant.PrefConst.EXCLUDE_FROM_RECENTS;
 import static com.github.tianma8023.smscode.constant.PrefConst.GET_ALIPAY_PACKET;
 import static com.github.tianma8023.smscode.constant.PrefConst.KEY_GENERAL;
 import static com.github.tianma8023.smscode.constant.PrefConst.LISTEN_MODE;
 import static com.github.tianma8023.smscode.constant.PrefConst.MARK_AS_READ;
-import static com.github.tianma8023.smscode.constant.PrefConst.MAX_SMS_RECORDS_COUNT_DEFAULT;
+import static com.github.tianma8023.smscode.constant.PrefConst.MAX_CODE_RECORDS_COUNT;
 import static com.github.tianma8023.smscode.constant.PrefConst.RATING;
 import static com.github.tianma8023.smscode.constant.PrefConst.SMSCODE_TEST;
 import static com.github.tianma8023.smscode.constant.PrefConst.SOURCE_CODE;
@@ -93,6 +95,7 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
 
     private SwitchPreference mEnablePref;
     private SwitchPreference mExcludeFromRecentsPref;
+    private Preference mRecordsEntryPref;
 
     private String mCurListenMode;
 
@@ -164,9 +167,12 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
 
 
         // code records group
-        Preference recordsEntryPref = findPreference(ENTRY_CODE_RECORDS);
-        recordsEntryPref.setOnPreferenceClickListener(this);
-        initRecordEntryPreference(recordsEntryPref);
+        ListPreference maxRecordsCountPref = findPreference(MAX_CODE_RECORDS_COUNT);
+        maxRecordsCountPref.setOnPreferenceChangeListener(this);
+
+        mRecordsEntryPref = findPreference(ENTRY_CODE_RECORDS);
+        mRecordsEntryPref.setOnPreferenceClickListener(this);
+        refreshRecordEntryPreference(maxRecordsCountPref.getValue());
         // code records group end
 
 
@@ -179,6 +185,9 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
         SwitchPreference verboseLogPref = findPreference(VERBOSE_LOG_MODE);
         verboseLogPref.setOnPreferenceChangeListener(this);
         refreshVerboseLogPreference(verboseLogPref, verboseLogPref.isChecked());
+
+        // diagnostics preference
+        findPreference(ENTRY_DIAGNOSTICS).setOnPreferenceClickListener(this);
         // others group end
 
 
@@ -264,6 +273,9 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
             case ENTRY_CODE_RECORDS:
                 CodeRecordsActivity.startToMe(mActivity);
                 break;
+            case ENTRY_DIAGNOSTICS:
+                DiagnosticsActivity.startToMe(mActivity);
+                break;
             case SMSCODE_TEST:
                 showSmsCodeTestDialog();
                 break;
@@ -376,6 +388,9 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
             case BLOCK_NOTIFICATION:
                 onBlockNotificationSwitched((SwitchPreference) preference, (Boolean) newValue);
                 break;
+            case MAX_CODE_RECORDS_COUNT:
+                refreshRecordEntryPreference((String) newValue);
+                break;
             default:
                 return false;
         }
@@ -423,7 +438,7 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
             if (TextUtils.isEmpty(mMsgBody)) {
                 msg.obj = "";
             } else {
-                msg.obj = SmsCodeUtils.parseSmsCodeIfExists(mContext, mMsgBody);
+                msg.obj = SmsCodeUtils.parseSmsCodeForTest(mContext, mMsgBody);
             }
             mHandler.sendMessage(msg);
         }
@@ -596,9 +611,11 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
         }
     }
 
-    private void initRecordEntryPreference(Preference preference) {
-        String summary = getString(R.string.pref_entry_code_records_summary, MAX_SMS_RECORDS_COUNT_DEFAULT);
-        preference.setSummary(summary);
+    private void refreshRecordEntryPreference(String maxRecordsCount) {
+        if (TextUtils.isEmpty(maxRecordsCount))
+            return;
+        String summary = getString(R.string.pref_entry_code_records_summary, Integer.valueOf(maxRecordsCount));
+        mRecordsEntryPref.setSummary(summary);
     }
 
     private void onBlockNotificationSwitched(final SwitchPreference switchPref, boolean on) {
@@ -0,0 +1,63 @@
+package com.github.tianma8023.smscode.app.diagnostics;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.MenuItem;
+
+import com.github.tianma8023.smscode.R;
+import com.github.tianma8023.smscode.app.base.BaseActivity;
+
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.widget.Toolbar;
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+/**
+ * Latency diagnostics of SMS code handling
+ */
+public class DiagnosticsActivity extends BaseActivity {
+
+    @BindView(R.id.toolbar)
+    Toolbar mToolbar;
+
+    public static void startToMe(Context context) {
+        Intent intent = new Intent(context, DiagnosticsActivity.class);
+        context.startActivity(intent);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+        ButterKnife.bind(this);
+
+        setupToolbar();
+
+        getSupportFragmentManager()
+                .beginTransaction()
+                .replace(R.id.diagnostics_main_content, DiagnosticsFragment.newInstance())
+                .commit();
+    }
+
+    private void setupToolbar() {
+        setSupportActionBar(mToolbar);
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setHomeButtonEnabled(true);
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case android.R.id.home:
+                onBackPressed();
+                break;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,217 @@
+package com.github.tianma8023.smscode.app.diagnostics;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.github.tianma8023.smscode.R;
+import com.github.tianma8023.smscode.service.StageLatencyRecorder;
+import com.github.tianma8023.smscode.utils.SnackbarHelper;
+import com.github.tianma8023.smscode.utils.XLog;
+import com.github.tianma8023.smscode.widget.DialogAsyncTask;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+/**
+ * Show the latency percentiles of each SMS code handling stage.
+ */
+public class DiagnosticsFragment extends Fragment {
+
+    private static final int REQUEST_CODE_EXPORT_CSV = 0xfff;
+
+    private static final String CSV_MIME_TYPE = "text/csv";
+
+    private Activity mActivity;
+
+    @BindView(R.id.stage_latency_recycler_view)
+    RecyclerView mRecyclerView;
+
+    @BindView(R.id.empty_view)
+    View mEmptyView;
+
+    private StageLatencyAdapter mStageLatencyAdapter;
+
+    public static DiagnosticsFragment newInstance() {
+        return new DiagnosticsFragment();
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+        View rootView = inflater.inflate(R.layout.fragment_diagnostics, container, false);
+        ButterKnife.bind(this, rootView);
+        return rootView;
+    }
+
+    @Override
+    public void onActivityCreated(@Nullable Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+
+        mActivity = getActivity();
+
+        mStageLatencyAdapter = new StageLatencyAdapter(new ArrayList<>());
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(mActivity));
+        mRecyclerView.setAdapter(mStageLatencyAdapter);
+        mRecyclerView.addItemDecoration(new DividerItemDecoration(mActivity, DividerItemDecoration.VERTICAL));
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        refreshData();
+    }
+
+    private void refreshData() {
+        long[][] latencies = StageLatencyRecorder.get().latenciesByStage();
+        List<StageLatencyItem> items = new ArrayList<>();
+        for (int stage = 0; stage < StageLatencyRecorder.STAGE_COUNT; stage++) {
+            long[] stageLatencies = latencies[stage];
+            if (stageLatencies.length == 0) {
+                continue;
+            }
+            items.add(new StageLatencyItem(StageLatencyRecorder.getStageName(stage),
+                    stageLatencies.length,
+                    StageLatencyRecorder.percentile(stageLatencies, 50),
+                    StageLatencyRecorder.percentile(stageLatencies, 95),
+                    StageLatencyRecorder.percentile(stageLatencies, 99)));
+        }
+        mStageLatencyAdapter.setNewData(items);
+        mEmptyView.setVisibility(items.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public void onCreateOptionsMenu(@NonNull Menu menu, @NonNull MenuInflater inflater) {
+        inflater.inflate(R.menu.menu_diagnostics, menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_export_csv:
+                attemptExportCsv();
+                break;
+            case R.id.action_clear_samples:
+                StageLatencyRecorder.get().clear();
+                refreshData();
+                break;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+        return true;
+    }
+
+    private void attemptExportCsv() {
+        if (mStageLatencyAdapter.getData().isEmpty()) {
+            SnackbarHelper.makeLong(mRecyclerView, R.string.diagnostics_empty_prompt).show();
+            return;
+        }
+        Intent exportIntent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        exportIntent.addCategory(Intent.CATEGORY_OPENABLE);
+        exportIntent.setType(CSV_MIME_TYPE);
+        String date = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        exportIntent.putExtra(Intent.EXTRA_TITLE, "smscode_latency_" + date + ".csv");
+        try {
+            startActivityForResult(exportIntent, REQUEST_CODE_EXPORT_CSV);
+        } catch (Exception e) {
+            // 防止某些 Rom 将 DocumentUI 阉割掉
+            SnackbarHelper.makeLong(mRecyclerView, R.string.documents_ui_not_found).show();
+        }
+    }
+
+    private void onExportCompleted(boolean success) {
+        int msgId = success ? R.string.export_succeed : R.string.export_failed;
+        SnackbarHelper.makeLong(mRecyclerView, msgId).show();
+    }
+
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        if (resultCode == Activity.RESULT_OK && requestCode == REQUEST_CODE_EXPORT_CSV && data != null) {
+            new ExportCsvAsyncTask(mActivity, this, data.getData(), getString(R.string.exporting)).execute();
+        }
+    }
+
+    /**
+     * Export the raw samples, oldest first, one sample per line.
+     */
+    private static class ExportCsvAsyncTask extends DialogAsyncTask<Void, Void, Boolean> {
+        private WeakReference<DiagnosticsFragment> mWeakFragment;
+        private WeakReference<Context> mWeakContext;
+        private Uri mUri;
+
+        ExportCsvAsyncTask(Context context, DiagnosticsFragment fragment, Uri uri, String progressMsg) {
+            super(context, progressMsg, false);
+            mWeakFragment = new WeakReference<>(fragment);
+            mWeakContext = new WeakReference<>(context);
+            mUri = uri;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... voids) {
+            Context context = mWeakContext.get();
+            if (context == null) {
+                return false;
+            }
+            long[][] samples = StageLatencyRecorder.get().snapshot();
+            try (OutputStream os = context.getContentResolver().openOutputStream(mUri)) {
+                if (os == null) {
+                    XLog.e("Export latency samples failed, can't open {}", mUri);
+                    return false;
+                }
+                Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+                writer.write("stage,latency_us\n");
+                for (long[] sample : samples) {
+                    writer.write(StageLatencyRecorder.getStageName((int) sample[0]));
+                    writer.write(',');
+                    writer.write(Long.toString(sample[1]));
+                    writer.write('\n');
+                }
+                writer.flush();
+                return true;
+            } catch (IOException e) {
+                XLog.e("Export latency samples failed", e);
+                return false;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean success) {
+            super.onPostExecute(success);
+            if (mWeakFragment.get() != null) {
+                mWeakFragment.get().onExportCompleted(success);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.tianma8023.smscode.app.diagnostics;
+
+import com.chad.library.adapter.base.BaseQuickAdapter;
+import com.chad.library.adapter.base.BaseViewHolder;
+import com.github.tianma8023.smscode.R;
+
+import java.util.List;
+import java.util.Locale;
+
+import androidx.annotation.Nullable;
+
+public class StageLatencyAdapter extends BaseQuickAdapter<StageLatencyItem, BaseViewHolder> {
+
+    StageLatencyAdapter(@Nullable List<StageLatencyItem> data) {
+        super(R.layout.item_stage_latency, data);
+    }
+
+    @Override
+    protected void convert(BaseViewHolder helper, StageLatencyItem item) {
+        helper.setText(R.id.stage_text_view, item.getStageName())
+                .setText(R.id.count_text_view, String.valueOf(item.getCount()))
+                .setText(R.id.p50_text_view, formatMillis(item.getP50()))
+                .setText(R.id.p95_text_view, formatMillis(item.getP95()))
+                .setText(R.id.p99_text_view, formatMillis(item.getP99()));
+    }
+
+    private static String formatMillis(long micros) {
+        if (micros < 0) {
+            return "-";
+        }
+        return String.format(Locale.getDefault(), "%.1f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.tianma8023.smscode.app.diagnostics;
+
+/**
+ * Latency percentiles of one stage, in microseconds.
+ */
+public class StageLatencyItem {
+
+    private final String stageName;
+    private final int count;
+    private final long p50;
+    private final long p95;
+    private final long p99;
+
+    StageLatencyItem(String stageName, int count, long p50, long p95, long p99) {
+        this.stageName = stageName;
+        this.count = count;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+    }
+
+    public String getStageName() {
+        return stageName;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP95() {
+        return p95;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+}
@@ -1,11 +1,9 @@
 package com.github.tianma8023.smscode.app.record;
 
-import android.text.TextUtils;
-
 import com.chad.library.adapter.base.BaseQuickAdapter;
 import com.chad.library.adapter.base.BaseViewHolder;
 import com.github.tianma8023.smscode.R;
-import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.entity.SmsMsgSummary;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -28,15 +26,15 @@ public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHold
 
     @Override
     protected void convert(BaseViewHolder helper, RecordItem item) {
-        SmsMsg smsMsg = item.getSmsMsg();
-        String company = smsMsg.getCompany();
+        SmsMsgSummary summary = item.getSummary();
+        String company = summary.getCompany();
         if (company == null || company.trim().length() == 0) {
-            company = smsMsg.getSender();
+            company = summary.getSender();
         }
         helper.setText(R.id.company_text_view, company)
-                .setText(R.id.smscode_text_view, smsMsg.getSmsCode())
-                .setText(R.id.date_text_view, mDateFormat.format(new Date(smsMsg.getDate())))
-                .setGone(R.id.record_details_view, !TextUtils.isEmpty(smsMsg.getBody()))
+                .setText(R.id.smscode_text_view, summary.getSmsCode())
+                .setText(R.id.date_text_view, mDateFormat.format(new Date(summary.getDate())))
+                .setGone(R.id.record_details_view, summary.hasBody())
                 .addOnClickListener(R.id.record_details_view);
         helper.itemView.setSelected(item.isSelected());
     }
@@ -64,7 +62,7 @@ public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHold
 
     public boolean isAllSelected() {
         boolean allSelected = true;
-        for (int i = 0; i < getItemCount(); i++) {
+        for (int i = 0; i < getData().size(); i++) {
             if (!isItemSelected(i)) {
                 allSelected = false;
                 break;
@@ -75,7 +73,7 @@ public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHold
 
     public boolean isAllUnselected() {
         boolean allUnselected = true;
-        for (int i = 0; i < getItemCount(); i++) {
+        for (int i = 0; i < getData().size(); i++) {
             if (isItemSelected(i)) {
                 allUnselected = false;
                 break;
@@ -84,14 +82,14 @@ public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHold
         return allUnselected;
     }
 
-    public List<SmsMsg> removeSelectedItems() {
+    public List<SmsMsgSummary> removeSelectedItems() {
         List<RecordItem> recordsToRemove = new ArrayList<>();
-        List<SmsMsg> messagesToRemove = new ArrayList<>();
-        for (int i = 0; i < getItemCount(); i++) {
+        List<SmsMsgSummary> messagesToRemove = new ArrayList<>();
+        for (int i = 0; i < getData().size(); i++) {
             RecordItem item = getItem(i);
             if (item != null && item.isSelected()) {
                 recordsToRemove.add(item);
-                messagesToRemove.add(item.getSmsMsg());
+                messagesToRemove.add(item.getSummary());
             }
         }
         getData().removeAll(recordsToRemove);
@@ -100,9 +98,9 @@ public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHold
         return messagesToRemove;
     }
 
-    public void addItems(List<SmsMsg> smsMsgList) {
+    public void addItems(List<SmsMsgSummary> summaries) {
         List<RecordItem> itemsToAdd = new ArrayList<>();
-        for (SmsMsg msg : smsMsgList) {
+        for (SmsMsgSummary msg : summaries) {
             RecordItem item = new RecordItem(msg);
             if (!getData().contains(item)) {
                 itemsToAdd.add(item);
@@ -112,8 +110,8 @@ public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHold
         if (!itemsToAdd.isEmpty()) {
             getData().addAll(itemsToAdd);
             Collections.sort(getData(), (o1, o2) -> {
-                long date1 = o1.getSmsMsg().getDate();
-                long date2 = o2.getSmsMsg().getDate();
+                long date1 = o1.getSummary().getDate();
+                long date2 = o2.getSummary().getDate();
                 return Long.compare(date2, date1);
             });
             notifyDataSetChanged();
@@ -1,7 +1,11 @@
 package com.github.tianma8023.smscode.app.record;
 
 import android.app.Activity;
+import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -14,17 +18,26 @@ import com.github.tianma8023.smscode.R;
 import com.github.tianma8023.smscode.app.base.back.BackPressFragment;
 import com.github.tianma8023.smscode.db.DBManager;
 import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.entity.SmsMsgSummary;
+import com.github.tianma8023.smscode.event.Event;
+import com.github.tianma8023.smscode.event.XEventBus;
 import com.github.tianma8023.smscode.utils.ClipboardUtils;
 import com.github.tianma8023.smscode.utils.SnackbarHelper;
 import com.github.tianma8023.smscode.utils.XLog;
 import com.google.android.material.snackbar.Snackbar;
 
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -45,6 +58,11 @@ public class CodeRecordsFragment extends BackPressFragment {
     private @interface RecordMode {
     }
 
+    // count of the records loaded at a time
+    private static final int PAGE_SIZE = 30;
+    // search after the input stops changing for a while
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
     private Activity mActivity;
 
     @BindView(R.id.code_records_recycler_view)
@@ -58,6 +76,14 @@ public class CodeRecordsFragment extends BackPressFragment {
     @RecordMode
     private int mCurrentMode = RECORD_MODE_NORMAL;
 
+    private final ExecutorService mLoadExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mSearchHandler = new Handler(Looper.getMainLooper());
+    // current search query, null for all records
+    private String mQuery;
+    private String mPendingQuery;
+    private final Runnable mSearchTask = () -> search(mPendingQuery);
+
     public static CodeRecordsFragment newInstance() {
         return new CodeRecordsFragment();
     }
@@ -114,6 +140,14 @@ public class CodeRecordsFragment extends BackPressFragment {
         mRecyclerView.setLayoutManager(new LinearLayoutManager(mActivity));
         mRecyclerView.setAdapter(mCodeRecordAdapter);
         mRecyclerView.addItemDecoration(new DividerItemDecoration(mActivity, DividerItemDecoration.VERTICAL));
+
+        mCodeRecordAdapter.setOnLoadMoreListener(this::loadMoreData, mRecyclerView);
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        XEventBus.register(this);
     }
 
     @Override
@@ -122,13 +156,94 @@ public class CodeRecordsFragment extends BackPressFragment {
         refreshData();
     }
 
+    @Override
+    public void onStop() {
+        super.onStop();
+        XEventBus.unregister(this);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mLoadExecutor.shutdownNow();
+        mSearchHandler.removeCallbacks(mSearchTask);
+    }
+
     private void refreshData() {
-        List<SmsMsg> smsMsgList = DBManager.get(mActivity).queryAllSmsMsg();
-        mCodeRecordAdapter.addItems(smsMsgList);
+        loadPage(null, 0);
+    }
+
+    private void loadMoreData() {
+        List<RecordItem> data = mCodeRecordAdapter.getData();
+        if (data.isEmpty()) {
+            loadPage(null, 0);
+        } else {
+            loadPage(data.get(data.size() - 1).getSummary(), data.size());
+        }
+    }
+
+    /**
+     * @param lastSummary last loaded record, used as keyset when listing all records
+     * @param offset      count of the loaded records, used when searching
+     */
+    private void loadPage(final SmsMsgSummary lastSummary, final int offset) {
+        final Context appContext = mActivity.getApplicationContext();
+        final String query = mQuery;
+        mLoadExecutor.execute(() -> {
+            List<SmsMsgSummary> summaries;
+            try {
+                DBManager dm = DBManager.get(appContext);
+                if (query == null) {
+                    summaries = dm.querySmsMsgSummaryPage(lastSummary, PAGE_SIZE);
+                } else {
+                    summaries = dm.searchSmsMsgSummary(query, PAGE_SIZE, offset);
+                }
+            } catch (Exception e) {
+                XLog.e("Error occurs when load SMS records", e);
+                summaries = new ArrayList<>();
+            }
+            XEventBus.post(new Event.SmsMsgPageLoadEvent(query, lastSummary, summaries));
+        });
+    }
+
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onSmsMsgPageLoaded(Event.SmsMsgPageLoadEvent event) {
+        if (!TextUtils.equals(event.query, mQuery)) {
+            // the query has changed since
+            return;
+        }
+        mCodeRecordAdapter.addItems(event.summaries);
+        // a short first page means no more pages only if nothing else has been loaded
+        boolean isLastPage = event.summaries.size() < PAGE_SIZE
+                && (event.lastSummary != null || mCodeRecordAdapter.getData().size() <= PAGE_SIZE);
+        if (isLastPage) {
+            mCodeRecordAdapter.loadMoreEnd(true);
+        } else {
+            mCodeRecordAdapter.loadMoreComplete();
+        }
+    }
+
+    private void scheduleSearch(String query) {
+        mPendingQuery = query;
+        mSearchHandler.removeCallbacks(mSearchTask);
+        mSearchHandler.postDelayed(mSearchTask, SEARCH_DEBOUNCE_MILLIS);
+    }
+
+    private void search(String query) {
+        mSearchHandler.removeCallbacks(mSearchTask);
+        if (query != null && query.trim().isEmpty()) {
+            query = null;
+        }
+        if (TextUtils.equals(query, mQuery)) {
+            return;
+        }
+        mQuery = query;
+        mCodeRecordAdapter.setNewData(new ArrayList<>());
+        refreshData();
     }
 
     private void refreshEmptyView() {
-        if (mCodeRecordAdapter.getItemCount() > 0) {
+        if (!mCodeRecordAdapter.getData().isEmpty()) {
             mEmptyView.setVisibility(View.GONE);
         } else {
             mEmptyView.setVisibility(View.VISIBLE);
@@ -144,18 +259,40 @@ public class CodeRecordsFragment extends BackPressFragment {
     }
 
     private void showSmsDetails(final RecordItem recordItem) {
-        SmsMsg smsMsg = recordItem.getSmsMsg();
+        // the list doesn't hold the body, load the full message
+        final Context appContext = mActivity.getApplicationContext();
+        final long id = recordItem.getSummary().getId();
+        mLoadExecutor.execute(() -> {
+            SmsMsg smsMsg = null;
+            try {
+                smsMsg = DBManager.get(appContext).loadSmsMsg(id);
+            } catch (Exception e) {
+                XLog.e("Error occurs when load SMS record", e);
+            }
+            XEventBus.post(new Event.SmsMsgLoadEvent(smsMsg));
+        });
+    }
+
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onSmsMsgLoaded(Event.SmsMsgLoadEvent event) {
+        final SmsMsg smsMsg = event.smsMsg;
+        if (smsMsg == null) {
+            return;
+        }
         new MaterialDialog.Builder(mActivity)
                 .title(R.string.message_details)
                 .content(smsMsg.getBody())
                 .positiveText(R.string.copy_smscode)
-                .onPositive((dialog, which) -> copySmsCode(recordItem))
+                .onPositive((dialog, which) -> copySmsCode(smsMsg.getSmsCode()))
                 .negativeText(R.string.cancel)
                 .show();
     }
 
     private void copySmsCode(RecordItem item) {
-        String smsCode = item.getSmsMsg().getSmsCode();
+        copySmsCode(item.getSummary().getSmsCode());
+    }
+
+    private void copySmsCode(String smsCode) {
         ClipboardUtils.copyToClipboard(mActivity, smsCode);
         String prompt = getString(R.string.prompt_sms_code_copied, smsCode);
         SnackbarHelper.makeShort(mRecyclerView, prompt).show();
@@ -186,9 +323,54 @@ public class CodeRecordsFragment extends BackPressFragment {
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         if (mCurrentMode == RECORD_MODE_EDIT) {
             inflater.inflate(R.menu.menu_edit_code_record, menu);
+        } else {
+            inflater.inflate(R.menu.menu_code_records, menu);
+            setupSearchView(menu.findItem(R.id.action_search));
         }
     }
 
+    private void setupSearchView(MenuItem searchItem) {
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_records_hint));
+        if (mQuery != null) {
+            // menu is recreated after the edit mode
+            searchItem.expandActionView();
+            searchView.setQuery(mQuery, false);
+            searchView.clearFocus();
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                scheduleSearch(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                // the cleared query text shouldn't be searched
+                searchView.setOnQueryTextListener(null);
+                // the menu is also cleared when entering the edit mode, keep the results then
+                if (mCurrentMode == RECORD_MODE_NORMAL) {
+                    search(null);
+                }
+                return true;
+            }
+        });
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
@@ -222,18 +404,23 @@ public class CodeRecordsFragment extends BackPressFragment {
     }
 
     private void removeSelectedItems() {
-        final List<SmsMsg> itemsToRemove = mCodeRecordAdapter.removeSelectedItems();
+        final List<SmsMsgSummary> itemsToRemove = mCodeRecordAdapter.removeSelectedItems();
         String text = getString(R.string.some_items_removed, itemsToRemove.size());
         Snackbar snackbar = SnackbarHelper.makeLong(mRecyclerView, text);
         snackbar.addCallback(new Snackbar.Callback() {
             @Override
             public void onDismissed(Snackbar transientBottomBar, int event) {
                 if (event != DISMISS_EVENT_ACTION) {
-                    try {
-                        DBManager.get(mActivity).removeSmsMsgList(itemsToRemove);
-                    } catch (Exception e) {
-                        XLog.e("Error occurs when remove SMS records", e);
+                    List<Long> ids = new ArrayList<>();
+                    for (SmsMsgSummary summary : itemsToRemove) {
+                        ids.add(summary.getId());
                     }
+                    DBManager.get(mActivity).removeSmsMsgsByIdAsync(ids)
+                            .whenComplete((result, error) -> {
+                                if (error != null) {
+                                    XLog.e("Error occurs when remove SMS records", error);
+                                }
+                            });
                 }
             }
         });
@@ -1,20 +1,20 @@
 package com.github.tianma8023.smscode.app.record;
 
-import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.entity.SmsMsgSummary;
 
 import java.util.Objects;
 
 public class RecordItem {
 
-    private SmsMsg smsMsg;
+    private SmsMsgSummary summary;
     private boolean selected;
 
-    RecordItem(SmsMsg smsMsg) {
-        this.smsMsg = smsMsg;
+    RecordItem(SmsMsgSummary summary) {
+        this.summary = summary;
     }
 
-    public SmsMsg getSmsMsg() {
-        return smsMsg;
+    public SmsMsgSummary getSummary() {
+        return summary;
     }
 
     public boolean isSelected() {
@@ -28,7 +28,7 @@ public class RecordItem {
     @Override
     public String toString() {
         return "RecordItem{" +
-                "smsMsg=" + smsMsg +
+                "summary=" + summary +
                 ", selected=" + selected +
                 '}';
     }
@@ -38,11 +38,11 @@ public class RecordItem {
         if (this == o) return true;
         if (!(o instanceof RecordItem)) return false;
         RecordItem item = (RecordItem) o;
-        return Objects.equals(smsMsg, item.smsMsg);
+        return Objects.equals(summary, item.summary);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(smsMsg);
+        return Objects.hash(summary);
     }
 }
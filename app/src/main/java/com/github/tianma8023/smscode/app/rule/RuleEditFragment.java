@@ -25,6 +25,7 @@ import com.github.tianma8023.smscode.entity.SmsCodeRule;
 import com.github.tianma8023.smscode.event.Event;
 import com.github.tianma8023.smscode.event.XEventBus;
 import com.github.tianma8023.smscode.utils.Utils;
+import com.github.tianma8023.smscode.utils.XLog;
 import com.google.android.material.textfield.TextInputEditText;
 
 import org.greenrobot.eventbus.Subscribe;
@@ -254,14 +255,29 @@ public class RuleEditFragment extends Fragment {
             if (duplicate) {
                 Toast.makeText(mActivity, R.string.rule_duplicated_prompt, Toast.LENGTH_LONG).show();
             } else {
-                long id = dbManager.addSmsCodeRule(mCodeRule);
-                mCodeRule.setId(id);
-                XEventBus.post(new Event.OnRuleCreateOrUpdate(mRuleEditType, mCodeRule));
-                mActivity.onBackPressed();
+                dbManager.addSmsCodeRuleAsync(mCodeRule).whenComplete((id, error) -> {
+                    if (error != null) {
+                        XLog.e("Add " + mCodeRule.toString() + " failed", error);
+                        return;
+                    }
+                    mCodeRule.setId(id);
+                    onRuleSaved();
+                });
             }
         } else if (mRuleEditType == EDIT_TYPE_UPDATE) {
-            dbManager.updateSmsCodeRule(mCodeRule);
-            XEventBus.post(new Event.OnRuleCreateOrUpdate(mRuleEditType, mCodeRule));
+            dbManager.updateSmsCodeRuleAsync(mCodeRule).whenComplete((result, error) -> {
+                if (error != null) {
+                    XLog.e("Update " + mCodeRule.toString() + " failed", error);
+                    return;
+                }
+                onRuleSaved();
+            });
+        }
+    }
+
+    private void onRuleSaved() {
+        XEventBus.post(new Event.OnRuleCreateOrUpdate(mRuleEditType, mCodeRule));
+        if (isAdded()) {
             mActivity.onBackPressed();
         }
     }
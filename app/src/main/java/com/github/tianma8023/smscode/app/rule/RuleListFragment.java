@@ -45,6 +45,8 @@ import org.greenrobot.eventbus.ThreadMode;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import androidx.annotation.IntDef;
@@ -80,6 +82,14 @@ public class RuleListFragment extends Fragment {
     @interface BackupType {
     }
 
+    private static final int SORT_BY_DEFAULT = 0;
+    private static final int SORT_BY_HIT_COUNT = 1;
+    private static final int SORT_BY_LAST_HIT_DATE = 2;
+
+    @IntDef({SORT_BY_DEFAULT, SORT_BY_HIT_COUNT, SORT_BY_LAST_HIT_DATE})
+    @interface SortType {
+    }
+
     @BindView(R.id.rule_list_recycler_view)
     RecyclerView mRecyclerView;
 
@@ -93,6 +103,9 @@ public class RuleListFragment extends Fragment {
 
     private int mSelectedPosition = -1;
 
+    @SortType
+    private int mSortType = SORT_BY_DEFAULT;
+
     private Activity mActivity;
 
     public static RuleListFragment newInstance(Uri importUri) {
@@ -192,9 +205,31 @@ public class RuleListFragment extends Fragment {
 
     private void refreshData() {
         List<SmsCodeRule> rules = DBManager.get(mActivity).queryAllSmsCodeRules();
+        sortRules(rules, mSortType);
         mRuleAdapter.setRules(rules);
     }
 
+    private static void sortRules(List<SmsCodeRule> rules, @SortType int sortType) {
+        Comparator<SmsCodeRule> comparator;
+        if (sortType == SORT_BY_HIT_COUNT) {
+            comparator = (r1, r2) -> Integer.compare(hitCountOf(r2), hitCountOf(r1));
+        } else if (sortType == SORT_BY_LAST_HIT_DATE) {
+            comparator = (r1, r2) -> Long.compare(lastHitDateOf(r2), lastHitDateOf(r1));
+        } else {
+            // database order
+            return;
+        }
+        Collections.sort(rules, comparator);
+    }
+
+    private static int hitCountOf(SmsCodeRule rule) {
+        return rule.getHitCount() == null ? 0 : rule.getHitCount();
+    }
+
+    private static long lastHitDateOf(SmsCodeRule rule) {
+        return rule.getLastHitDate() == null ? 0 : rule.getLastHitDate();
+    }
+
     @Override
     public void onStart() {
         super.onStart();
@@ -228,6 +263,12 @@ public class RuleListFragment extends Fragment {
             case R.id.action_export_rules:
                 importOrExportRuleList(TYPE_EXPORT, null);
                 break;
+            case R.id.action_sort_rules:
+                showSortRulesDialog();
+                break;
+            case R.id.action_remove_never_hit_rules:
+                attemptRemoveNeverHitRules();
+                break;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -258,6 +299,46 @@ public class RuleListFragment extends Fragment {
         return true;
     }
 
+    private void showSortRulesDialog() {
+        new MaterialDialog.Builder(mActivity)
+                .title(R.string.action_sort_rules)
+                .items(getString(R.string.sort_rules_by_default),
+                        getString(R.string.sort_rules_by_hit_count),
+                        getString(R.string.sort_rules_by_last_hit_date))
+                .itemsCallbackSingleChoice(mSortType, (dialog, itemView, which, text) -> {
+                    mSortType = which;
+                    refreshData();
+                    return true;
+                })
+                .show();
+    }
+
+    private void attemptRemoveNeverHitRules() {
+        final List<SmsCodeRule> neverHitRules = DBManager.get(mActivity).queryNeverHitSmsCodeRules();
+        if (neverHitRules.isEmpty()) {
+            SnackbarHelper.makeLong(mRecyclerView, R.string.no_never_hit_rules).show();
+            return;
+        }
+
+        new MaterialDialog.Builder(mActivity)
+                .title(R.string.action_remove_never_hit_rules)
+                .content(getString(R.string.remove_never_hit_rules_confirmation, neverHitRules.size()))
+                .positiveText(R.string.yes)
+                .onPositive((dialog, which) -> DBManager.get(mActivity)
+                        .removeSmsCodeRulesAsync(neverHitRules)
+                        .whenComplete((result, error) -> {
+                            if (error != null) {
+                                XLog.e("Remove never hit rules failed", error);
+                            }
+                            if (isAdded()) {
+                                refreshData();
+                                SnackbarHelper.makeLong(mRecyclerView, R.string.removed).show();
+                            }
+                        }))
+                .negativeText(R.string.no)
+                .show();
+    }
+
     private ItemTouchHelper.Callback mSwipeToRemoveCallback =
             new ItemTouchHelper.SimpleCallback(0, ItemTouchHelper.END | ItemTouchHelper.START) {
                 @Override
@@ -284,11 +365,13 @@ public class RuleListFragment extends Fragment {
             @Override
             public void onDismissed(Snackbar transientBottomBar, int event) {
                 if (event != DISMISS_EVENT_ACTION) {
-                    try {
-                        DBManager.get(mActivity).removeSmsCodeRule(itemToRemove);
-                    } catch (Exception e) {
-                        XLog.e("Remove " + itemToRemove.toString() + " failed", e);
-                    }
+                    DBManager.get(mActivity)
+                            .removeSmsCodeRulesAsync(Collections.singletonList(itemToRemove))
+                            .whenComplete((result, error) -> {
+                                if (error != null) {
+                                    XLog.e("Remove " + itemToRemove.toString() + " failed", error);
+                                }
+                            });
                 }
             }
         });
@@ -7,4 +7,5 @@ public interface NotificationConst {
 
     String CHANNEL_ID_SMSCODE_NOTIFICATION = "smscode_notification";
     String GROUP_KEY_SMSCODE_NOTIFICATION = "group_key_smscode_notification";
+    int NOTIFICATION_ID_SMSCODE_SUMMARY = 0xfe;
 }
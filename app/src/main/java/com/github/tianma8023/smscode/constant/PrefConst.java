@@ -81,8 +81,14 @@ public interface PrefConst {
     String VERBOSE_LOG_MODE = "pref_verbose_log_mode";
     boolean VERBOSE_LOG_MODE_DEFAULT = false;
 
+    String ENTRY_DIAGNOSTICS = "pref_entry_diagnostics";
+
     String ENABLE_CODE_RECORDS = "pref_enable_code_records";
     boolean ENABLE_CODE_RECORDS_DEFAULT = true;
-    int MAX_SMS_RECORDS_COUNT_DEFAULT = 10;
+    String MAX_CODE_RECORDS_COUNT = "pref_max_code_records_count";
+    String MAX_CODE_RECORDS_COUNT_DEFAULT = "1000";
+    // days, 0 means no age limit
+    String MAX_CODE_RECORDS_AGE = "pref_max_code_records_age";
+    String MAX_CODE_RECORDS_AGE_DEFAULT = "0";
     String ENTRY_CODE_RECORDS = "pref_entry_code_records";
 }
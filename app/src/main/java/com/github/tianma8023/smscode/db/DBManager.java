@@ -1,6 +1,7 @@
 package com.github.tianma8023.smscode.db;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.github.tianma8023.smscode.entity.DaoMaster;
@@ -9,27 +10,85 @@ import com.github.tianma8023.smscode.entity.SmsCodeRule;
 import com.github.tianma8023.smscode.entity.SmsCodeRuleDao;
 import com.github.tianma8023.smscode.entity.SmsMsg;
 import com.github.tianma8023.smscode.entity.SmsMsgDao;
+import com.github.tianma8023.smscode.entity.SmsMsgSummary;
 
 import org.greenrobot.greendao.AbstractDao;
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.identityscope.IdentityScopeType;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.Nullable;
 
 /**
- * Database Manager for GreenDao
+ * Database Manager for GreenDao<br>
+ * The database is opened in WAL mode, so the reads run concurrently on the caller threads,
+ * while all the writes run on one writer thread.
  */
 public class DBManager {
 
     private static final String DB_NAME = "sms-code.db";
 
-    private static DBManager sInstance;
+    private static volatile DBManager sInstance;
+
+    // all columns of SmsMsg except the body
+    private static final String SMS_MSG_SUMMARY_SELECT = "SELECT"
+            + " T." + SmsMsgDao.Properties.Id.columnName
+            + ", T." + SmsMsgDao.Properties.Sender.columnName
+            + ", T." + SmsMsgDao.Properties.Date.columnName
+            + ", T." + SmsMsgDao.Properties.Company.columnName
+            + ", T." + SmsMsgDao.Properties.SmsCode.columnName
+            + ", LENGTH(T." + SmsMsgDao.Properties.Body.columnName + ") > 0"
+            + " FROM " + SmsMsgDao.TABLENAME + " T";
 
     private DaoSession mDaoSession;
+    // the session without identity scope, the SmsMsg entities aren't cached
+    private DaoSession mUncachedSession;
+    private volatile boolean mSmsMsgIdentityScopeEnabled = false;
+
+    private final ExecutorService mWriteExecutor;
+    private volatile Thread mWriterThread;
+
+    // SMS messages waiting to be inserted in one transaction
+    private final Object mPendingSmsMsgLock = new Object();
+    private List<SmsMsg> mPendingSmsMsgs = new ArrayList<>();
+    private List<Runnable> mPendingSmsMsgListeners = new ArrayList<>();
+    private DbFuture<Void> mPendingSmsMsgFuture;
+
+    /**
+     * Observer of the SmsCodeRule changes made through DBManager.
+     */
+    public interface SmsCodeRuleObserver {
+
+        void onRulesAddedOrUpdated(List<SmsCodeRule> rules);
+
+        void onRulesRemoved(List<SmsCodeRule> rules);
+
+        void onAllRulesRemoved();
+    }
+
+    private final List<SmsCodeRuleObserver> mRuleObservers = new CopyOnWriteArrayList<>();
 
     private DBManager(Context context) {
         TSQLiteOpenHelper openHelper =
                 new TSQLiteOpenHelper(context.getApplicationContext(), DB_NAME);
+        openHelper.setWriteAheadLoggingEnabled(true);
         SQLiteDatabase database = openHelper.getWritableDatabase();
-        mDaoSession = new DaoMaster(database).newSession();
+        DaoMaster daoMaster = new DaoMaster(database);
+        mDaoSession = daoMaster.newSession();
+        mUncachedSession = daoMaster.newSession(IdentityScopeType.None);
+        mWriteExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "DBManager-writer");
+            mWriterThread = thread;
+            return thread;
+        });
     }
 
     public static DBManager get(Context context) {
@@ -43,59 +102,203 @@ public class DBManager {
         return sInstance;
     }
 
+    /**
+     * Run the write operation on the writer thread asynchronously.
+     */
+    private <T> DbFuture<T> submitWrite(Callable<T> write) {
+        DbFuture<T> future = new DbFuture<>(write);
+        mWriteExecutor.execute(future);
+        return future;
+    }
+
+    /**
+     * Run the write operation on the writer thread and wait for it.
+     */
+    private <T> T executeWrite(Callable<T> write) {
+        try {
+            if (Thread.currentThread() == mWriterThread) {
+                return write.call();
+            }
+            return submitWrite(write).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private <T> AbstractDao getAbstractDao(Class<T> entityClass) {
+        if (entityClass == SmsMsg.class) {
+            return getSmsMsgDao();
+        }
         return mDaoSession.getDao(entityClass);
     }
 
+    private SmsMsgDao getSmsMsgDao() {
+        return mSmsMsgIdentityScopeEnabled ?
+                mDaoSession.getSmsMsgDao() : mUncachedSession.getSmsMsgDao();
+    }
+
+    /**
+     * Whether the SmsMsg entities are cached by greenDAO identity scope, disabled by default.
+     * The records are rarely loaded twice, caching all of them only costs heap.
+     */
+    public void setSmsMsgIdentityScopeEnabled(boolean enabled) {
+        if (mSmsMsgIdentityScopeEnabled != enabled) {
+            mDaoSession.getSmsMsgDao().detachAll();
+            mSmsMsgIdentityScopeEnabled = enabled;
+        }
+    }
+
+    /**
+     * INSERT OR REPLACE deletes the conflicting row without firing the delete triggers,
+     * which would leave stale rows in the SmsMsg full-text index, so SmsMsg is always inserted.
+     */
+    private static boolean isReplaceAllowed(Class<?> entityClass) {
+        return entityClass != SmsMsg.class;
+    }
+
     @SuppressWarnings("unchecked")
     private <T> long addEntity(Class<T> entityClass, T entity) {
         AbstractDao abstractDao = getAbstractDao(entityClass);
-        return abstractDao.insertOrReplace(entity);
+        if (!isReplaceAllowed(entityClass)) {
+            return executeWrite(() -> abstractDao.insert(entity));
+        }
+        return executeWrite(() -> abstractDao.insertOrReplace(entity));
     }
 
     @SuppressWarnings("unchecked")
     private <T> void addEntities(Class<T> entityClass, List<T> entities) {
         AbstractDao abstractDao = getAbstractDao(entityClass);
-        abstractDao.insertOrReplaceInTx(entities);
+        executeWrite(() -> {
+            if (isReplaceAllowed(entityClass)) {
+                abstractDao.insertOrReplaceInTx(entities);
+            } else {
+                abstractDao.insertInTx(entities);
+            }
+            return null;
+        });
     }
 
     @SuppressWarnings("unchecked")
     private <T> void updateEntity(Class<T> entityClass, T entity) {
         AbstractDao abstractDao = getAbstractDao(entityClass);
-        abstractDao.update(entity);
+        executeWrite(() -> {
+            abstractDao.update(entity);
+            return null;
+        });
     }
 
     @SuppressWarnings("unchecked")
     private <T> void removeEntity(Class<T> entityClass, T entity) {
         AbstractDao abstractDao = getAbstractDao(entityClass);
-        abstractDao.delete(entity);
+        executeWrite(() -> {
+            abstractDao.delete(entity);
+            return null;
+        });
     }
 
     @SuppressWarnings("unchecked")
     private <T> void removeEntities(Class<T> entityClass, List<T> entities) {
         AbstractDao abstractDao = getAbstractDao(entityClass);
-        abstractDao.deleteInTx(entities);
+        executeWrite(() -> {
+            abstractDao.deleteInTx(entities);
+            return null;
+        });
     }
 
     private <T> void removeAll(Class<T> entityClass) {
         AbstractDao abstractDao = getAbstractDao(entityClass);
-        abstractDao.deleteAll();
+        executeWrite(() -> {
+            abstractDao.deleteAll();
+            return null;
+        });
     }
 
     private <T> List<T> queryAll(Class<T> entityClass) {
         return mDaoSession.queryBuilder(entityClass).list();
     }
 
+    public void registerSmsCodeRuleObserver(SmsCodeRuleObserver observer) {
+        mRuleObservers.add(observer);
+    }
+
+    public void unregisterSmsCodeRuleObserver(SmsCodeRuleObserver observer) {
+        mRuleObservers.remove(observer);
+    }
+
     public long addSmsCodeRule(SmsCodeRule smsCodeRule) {
-        return addEntity(SmsCodeRule.class, smsCodeRule);
+        long id = addEntity(SmsCodeRule.class, smsCodeRule);
+        for (SmsCodeRuleObserver observer : mRuleObservers) {
+            observer.onRulesAddedOrUpdated(Collections.singletonList(smsCodeRule));
+        }
+        return id;
     }
 
     public void addSmsCodeRules(List<SmsCodeRule> smsCodeRules) {
         addEntities(SmsCodeRule.class, smsCodeRules);
+        for (SmsCodeRuleObserver observer : mRuleObservers) {
+            observer.onRulesAddedOrUpdated(smsCodeRules);
+        }
+    }
+
+    public DbFuture<Long> addSmsCodeRuleAsync(SmsCodeRule smsCodeRule) {
+        return submitWrite(() -> addSmsCodeRule(smsCodeRule));
     }
 
     public void updateSmsCodeRule(SmsCodeRule smsCodeRule) {
-        updateEntity(SmsCodeRule.class, smsCodeRule);
+        // load and update on the writer thread, so that no hit is lost in between
+        executeWrite(() -> {
+            // the edited rule may carry stale hit statistics
+            SmsCodeRule storedRule = mDaoSession.getSmsCodeRuleDao().load(smsCodeRule.getId());
+            if (storedRule != null && storedRule != smsCodeRule) {
+                smsCodeRule.setHitCount(storedRule.getHitCount());
+                smsCodeRule.setLastHitDate(storedRule.getLastHitDate());
+            }
+            updateEntity(SmsCodeRule.class, smsCodeRule);
+            return null;
+        });
+        for (SmsCodeRuleObserver observer : mRuleObservers) {
+            observer.onRulesAddedOrUpdated(Collections.singletonList(smsCodeRule));
+        }
+    }
+
+    public DbFuture<Void> updateSmsCodeRuleAsync(SmsCodeRule smsCodeRule) {
+        return submitWrite(() -> {
+            updateSmsCodeRule(smsCodeRule);
+            return null;
+        });
+    }
+
+    /**
+     * Record a hit of the rule asynchronously, the statistics change won't notify the rule observers.
+     *
+     * @param ruleId  id of the rule
+     * @param hitDate hit date in milliseconds
+     */
+    public void recordSmsCodeRuleHit(long ruleId, long hitDate) {
+        submitWrite(() -> {
+            final String hitCountColumn = SmsCodeRuleDao.Properties.HitCount.columnName;
+            final String lastHitDateColumn = SmsCodeRuleDao.Properties.LastHitDate.columnName;
+            mDaoSession.getDatabase().execSQL("UPDATE " + SmsCodeRuleDao.TABLENAME
+                            + " SET " + hitCountColumn + " = IFNULL(" + hitCountColumn + ", 0) + 1, "
+                            + lastHitDateColumn + " = ?"
+                            + " WHERE " + SmsCodeRuleDao.Properties.Id.columnName + " = ?",
+                    new Object[]{hitDate, ruleId});
+            // the cached rule is stale now, drop the rule cache without querying,
+            // the next load reads it again
+            mDaoSession.getSmsCodeRuleDao().detachAll();
+            return null;
+        });
     }
 
     public List<SmsCodeRule> queryAllSmsCodeRules() {
@@ -118,27 +321,217 @@ public class DBManager {
 
     public void removeSmsCodeRule(SmsCodeRule smsCodeRule) {
         removeEntity(SmsCodeRule.class, smsCodeRule);
+        for (SmsCodeRuleObserver observer : mRuleObservers) {
+            observer.onRulesRemoved(Collections.singletonList(smsCodeRule));
+        }
+    }
+
+    public void removeSmsCodeRules(List<SmsCodeRule> smsCodeRules) {
+        removeEntities(SmsCodeRule.class, smsCodeRules);
+        for (SmsCodeRuleObserver observer : mRuleObservers) {
+            observer.onRulesRemoved(smsCodeRules);
+        }
+    }
+
+    public DbFuture<Void> removeSmsCodeRulesAsync(List<SmsCodeRule> smsCodeRules) {
+        return submitWrite(() -> {
+            removeSmsCodeRules(smsCodeRules);
+            return null;
+        });
+    }
+
+    /**
+     * Query the rules which have never extracted SMS code.
+     */
+    public List<SmsCodeRule> queryNeverHitSmsCodeRules() {
+        SmsCodeRuleDao dao = mDaoSession.getSmsCodeRuleDao();
+        return dao.queryBuilder()
+                .whereOr(SmsCodeRuleDao.Properties.HitCount.isNull(),
+                        SmsCodeRuleDao.Properties.HitCount.eq(0))
+                .list();
     }
 
     public void removeAllSmsCodeRules() {
         removeAll(SmsCodeRule.class);
+        for (SmsCodeRuleObserver observer : mRuleObservers) {
+            observer.onAllRulesRemoved();
+        }
     }
 
     public void addSmsMsg(SmsMsg smsMsg) {
         addEntity(SmsMsg.class, smsMsg);
     }
 
-    public void addSmsMsgList(List<SmsMsg> smsMsgList) {
-        addEntities(SmsMsg.class, smsMsgList);
+    /**
+     * Add SMS messages and remove the outdated records in one transaction.
+     * The retention is enforced by SQL, no record is loaded into memory.
+     *
+     * @param maxCount     max count of the records kept, no limit if it's not positive
+     * @param maxAgeMillis max age of the records kept, no limit if it's not positive
+     */
+    public void addSmsMsgList(List<SmsMsg> smsMsgList, int maxCount, long maxAgeMillis) {
+        executeWrite(() -> {
+            mDaoSession.runInTx(() -> {
+                addEntities(SmsMsg.class, smsMsgList);
+                trimSmsMsg(maxCount, maxAgeMillis);
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous {@link #addSmsMsgList(List, int, long)}. The messages added before the writer
+     * gets to them are grouped into one transaction, with the limits of the first request.
+     */
+    public DbFuture<Void> addSmsMsgListAsync(List<SmsMsg> smsMsgList, int maxCount, long maxAgeMillis) {
+        return addSmsMsgListAsync(smsMsgList, maxCount, maxAgeMillis, null);
+    }
+
+    /**
+     * @param onPersisted called on the writer thread right after the messages are committed
+     */
+    public DbFuture<Void> addSmsMsgListAsync(List<SmsMsg> smsMsgList, int maxCount, long maxAgeMillis,
+                                             @Nullable Runnable onPersisted) {
+        synchronized (mPendingSmsMsgLock) {
+            mPendingSmsMsgs.addAll(smsMsgList);
+            if (onPersisted != null) {
+                mPendingSmsMsgListeners.add(onPersisted);
+            }
+            if (mPendingSmsMsgFuture == null) {
+                mPendingSmsMsgFuture = submitWrite(() -> {
+                    List<SmsMsg> pendingSmsMsgs;
+                    List<Runnable> listeners;
+                    synchronized (mPendingSmsMsgLock) {
+                        pendingSmsMsgs = mPendingSmsMsgs;
+                        listeners = mPendingSmsMsgListeners;
+                        mPendingSmsMsgs = new ArrayList<>();
+                        mPendingSmsMsgListeners = new ArrayList<>();
+                        mPendingSmsMsgFuture = null;
+                    }
+                    addSmsMsgList(pendingSmsMsgs, maxCount, maxAgeMillis);
+                    for (Runnable listener : listeners) {
+                        listener.run();
+                    }
+                    return null;
+                });
+            }
+            return mPendingSmsMsgFuture;
+        }
+    }
+
+    private void trimSmsMsg(int maxCount, long maxAgeMillis) {
+        Database db = mDaoSession.getDatabase();
+        final String table = SmsMsgDao.TABLENAME;
+        final String idColumn = SmsMsgDao.Properties.Id.columnName;
+        final String dateColumn = SmsMsgDao.Properties.Date.columnName;
+        if (maxAgeMillis > 0) {
+            db.execSQL("DELETE FROM " + table + " WHERE " + dateColumn + " < ?",
+                    new Object[]{System.currentTimeMillis() - maxAgeMillis});
+        }
+        if (maxCount > 0) {
+            db.execSQL("DELETE FROM " + table + " WHERE " + idColumn + " NOT IN"
+                            + " (SELECT " + idColumn + " FROM " + table
+                            + " ORDER BY " + dateColumn + " DESC LIMIT ?)",
+                    new Object[]{maxCount});
+        }
+        // the removed rows may be cached in the identity scope
+        mDaoSession.getSmsMsgDao().detachAll();
     }
 
     public List<SmsMsg> queryAllSmsMsg() {
-        return mDaoSession.queryBuilder(SmsMsg.class)
+        return getSmsMsgDao().queryBuilder()
                 .orderDesc(SmsMsgDao.Properties.Date)
                 .list();
     }
 
+    @Nullable
+    public SmsMsg loadSmsMsg(long id) {
+        return getSmsMsgDao().load(id);
+    }
+
+    /**
+     * Query a page of SMS message summaries ordered by date descending,
+     * paged by the keyset (date, id).
+     *
+     * @param lastSummary the last summary of the previous page, null for the first page
+     * @param pageSize    max count of the summaries in the page
+     */
+    public List<SmsMsgSummary> querySmsMsgSummaryPage(@Nullable SmsMsgSummary lastSummary, int pageSize) {
+        final String idColumn = SmsMsgDao.Properties.Id.columnName;
+        final String dateColumn = SmsMsgDao.Properties.Date.columnName;
+        String where = "";
+        String[] selectionArgs = null;
+        if (lastSummary != null) {
+            where = " WHERE T." + dateColumn + " < ?"
+                    + " OR (T." + dateColumn + " = ? AND T." + idColumn + " < ?)";
+            String date = String.valueOf(lastSummary.getDate());
+            selectionArgs = new String[]{date, date, String.valueOf(lastSummary.getId())};
+        }
+        String sql = SMS_MSG_SUMMARY_SELECT + where
+                + " ORDER BY T." + dateColumn + " DESC, T." + idColumn + " DESC"
+                + " LIMIT " + pageSize;
+        return querySmsMsgSummaries(sql, selectionArgs);
+    }
+
+    /**
+     * Summary version of {@link #searchSmsMsg(String, int, int)}.
+     */
+    public List<SmsMsgSummary> searchSmsMsgSummary(String query, int limit, int offset) {
+        String matchExpression = SmsMsgFts.toMatchExpression(query);
+        if (matchExpression == null) {
+            return new ArrayList<>();
+        }
+        String sql = SMS_MSG_SUMMARY_SELECT + " " + buildSearchClause(limit, offset);
+        return querySmsMsgSummaries(sql, new String[]{matchExpression});
+    }
+
+    private List<SmsMsgSummary> querySmsMsgSummaries(String sql, String[] selectionArgs) {
+        List<SmsMsgSummary> summaries = new ArrayList<>();
+        try (Cursor cursor = mDaoSession.getDatabase().rawQuery(sql, selectionArgs)) {
+            while (cursor.moveToNext()) {
+                summaries.add(new SmsMsgSummary(
+                        cursor.getLong(0),
+                        cursor.getString(1),
+                        cursor.getLong(2),
+                        cursor.getString(3),
+                        cursor.getString(4),
+                        cursor.getInt(5) != 0));
+            }
+        }
+        return summaries;
+    }
+
+    private static String buildSearchClause(int limit, int offset) {
+        final String idColumn = SmsMsgDao.Properties.Id.columnName;
+        final String dateColumn = SmsMsgDao.Properties.Date.columnName;
+        return "WHERE T." + idColumn + " IN (SELECT docid FROM " + SmsMsgFts.TABLENAME
+                + " WHERE " + SmsMsgFts.TABLENAME + " MATCH ?)"
+                + " ORDER BY T." + dateColumn + " DESC, T." + idColumn + " DESC"
+                + " LIMIT " + limit + " OFFSET " + offset;
+    }
+
+    /**
+     * Full-text search of the SMS messages by sender, body, company and SMS code,
+     * ordered by date descending.
+     *
+     * @param query words separated by whitespace, every word is matched as a prefix
+     */
+    public List<SmsMsg> searchSmsMsg(String query, int limit, int offset) {
+        String matchExpression = SmsMsgFts.toMatchExpression(query);
+        if (matchExpression == null) {
+            return new ArrayList<>();
+        }
+        return getSmsMsgDao().queryRaw(buildSearchClause(limit, offset), matchExpression);
+    }
+
     public void removeSmsMsgList(List<SmsMsg> smsMsgList) {
         removeEntities(SmsMsg.class, smsMsgList);
     }
+
+    public DbFuture<Void> removeSmsMsgsByIdAsync(List<Long> ids) {
+        return submitWrite(() -> {
+            getSmsMsgDao().deleteByKeyInTx(ids);
+            return null;
+        });
+    }
 }
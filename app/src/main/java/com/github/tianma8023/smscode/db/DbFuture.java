@@ -0,0 +1,79 @@
+package com.github.tianma8023.smscode.db;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Result of an asynchronous database operation.<br>
+ * Like CompletableFuture (which needs API 24), the completion callbacks can be added at any time,
+ * they're always called on the main thread.
+ */
+public final class DbFuture<T> extends FutureTask<T> {
+
+    public interface Callback<T> {
+
+        /**
+         * @param error null if the operation succeeds
+         */
+        void onComplete(@Nullable T result, @Nullable Throwable error);
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // guarded by this
+    private final List<Callback<T>> mCallbacks = new ArrayList<>();
+
+    DbFuture(Callable<T> callable) {
+        super(callable);
+    }
+
+    /**
+     * Call back on the main thread when the operation is done, or soon if it's already done.
+     */
+    public DbFuture<T> whenComplete(Callback<T> callback) {
+        synchronized (this) {
+            if (!isDone()) {
+                mCallbacks.add(callback);
+                return this;
+            }
+        }
+        deliver(callback);
+        return this;
+    }
+
+    @Override
+    protected void done() {
+        List<Callback<T>> callbacks;
+        synchronized (this) {
+            callbacks = new ArrayList<>(mCallbacks);
+            mCallbacks.clear();
+        }
+        for (Callback<T> callback : callbacks) {
+            deliver(callback);
+        }
+    }
+
+    private void deliver(Callback<T> callback) {
+        sMainHandler.post(() -> {
+            T result = null;
+            Throwable error = null;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            } catch (InterruptedException | CancellationException e) {
+                error = e;
+            }
+            callback.onComplete(result, error);
+        });
+    }
+}
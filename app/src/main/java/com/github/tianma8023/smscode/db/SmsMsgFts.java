@@ -0,0 +1,102 @@
+package com.github.tianma8023.smscode.db;
+
+import android.database.SQLException;
+import android.text.TextUtils;
+
+import com.github.tianma8023.smscode.entity.SmsMsgDao;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import org.greenrobot.greendao.database.Database;
+
+/**
+ * FTS4 full-text index of the SmsMsg records.<br>
+ * It's an external content table of SMS_MSG, kept in sync by triggers,
+ * so only the index is stored and the records are never written by hand.
+ */
+final class SmsMsgFts {
+
+    static final String TABLENAME = "SMS_MSG_FTS";
+
+    private static final String CONTENT_TABLE = SmsMsgDao.TABLENAME;
+    private static final String ROW_ID = SmsMsgDao.Properties.Id.columnName;
+    private static final String[] COLUMNS = {
+            SmsMsgDao.Properties.Sender.columnName,
+            SmsMsgDao.Properties.Body.columnName,
+            SmsMsgDao.Properties.Company.columnName,
+            SmsMsgDao.Properties.SmsCode.columnName,
+    };
+
+    // the icu tokenizer splits CJK text into words, but it's not built into every SQLite
+    private static final String TOKENIZER_ICU = "icu";
+    private static final String TOKENIZER_FALLBACK = "unicode61";
+
+    private SmsMsgFts() {
+    }
+
+    /**
+     * Create the index table and the triggers if they don't exist.
+     *
+     * @param rebuild whether to rebuild the index from the existing records
+     */
+    static void create(Database db, boolean rebuild) {
+        try {
+            createTable(db, TOKENIZER_ICU);
+        } catch (SQLException e) {
+            XLog.w("Tokenizer {} unavailable, fallback to {}", TOKENIZER_ICU, TOKENIZER_FALLBACK);
+            createTable(db, TOKENIZER_FALLBACK);
+        }
+        createTriggers(db);
+        if (rebuild) {
+            db.execSQL("INSERT INTO " + TABLENAME + "(" + TABLENAME + ") VALUES('rebuild')");
+        }
+    }
+
+    private static void createTable(Database db, String tokenizer) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLENAME + " USING fts4("
+                + TextUtils.join(", ", COLUMNS)
+                + ", content=\"" + CONTENT_TABLE + "\""
+                + ", tokenize=" + tokenizer + ")");
+    }
+
+    private static void createTriggers(Database db) {
+        String newValues = "new." + ROW_ID + ", new." + TextUtils.join(", new.", COLUMNS);
+        String columns = "docid, " + TextUtils.join(", ", COLUMNS);
+        // the old values are read from the content table, so it must be done before the change
+        String deleteOld = "DELETE FROM " + TABLENAME + " WHERE docid = old." + ROW_ID + ";";
+        String insertNew = "INSERT INTO " + TABLENAME + "(" + columns + ") VALUES(" + newValues + ");";
+
+        createTrigger(db, "SMS_MSG_FTS_BU", "BEFORE UPDATE", deleteOld);
+        createTrigger(db, "SMS_MSG_FTS_BD", "BEFORE DELETE", deleteOld);
+        createTrigger(db, "SMS_MSG_FTS_AU", "AFTER UPDATE", insertNew);
+        createTrigger(db, "SMS_MSG_FTS_AI", "AFTER INSERT", insertNew);
+    }
+
+    private static void createTrigger(Database db, String name, String event, String statement) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + name + " " + event + " ON " + CONTENT_TABLE
+                + " BEGIN " + statement + " END");
+    }
+
+    /**
+     * Convert the user input into a MATCH expression, every word is matched as a prefix.
+     *
+     * @return null if there is no word
+     */
+    static String toMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String word : query.trim().split("\\s+")) {
+            // quotes can't be escaped in a MATCH phrase
+            word = word.replace("\"", "");
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append('"').append(word).append("*\"");
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+}
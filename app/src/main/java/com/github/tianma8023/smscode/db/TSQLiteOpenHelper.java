@@ -20,6 +20,12 @@ public class TSQLiteOpenHelper extends DaoMaster.OpenHelper{
         super(context, name, factory);
     }
 
+    @Override
+    public void onCreate(Database db) {
+        super.onCreate(db);
+        SmsMsgFts.create(db, false);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public void onUpgrade(Database db, int oldVersion, int newVersion) {
@@ -36,5 +42,8 @@ public class TSQLiteOpenHelper extends DaoMaster.OpenHelper{
                 DaoMaster.dropAllTables(db, ifExists);
             }
         }, SmsCodeRuleDao.class, SmsMsgDao.class);
+
+        // the triggers are dropped with the recreated tables
+        SmsMsgFts.create(db, true);
     }
 }
@@ -4,6 +4,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import com.github.tianma8023.smscode.backup.BackupConst;
+import com.github.tianma8023.smscode.parser.CodeRule;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 
@@ -11,6 +12,7 @@ import org.greenrobot.greendao.annotation.Entity;
 import org.greenrobot.greendao.annotation.Generated;
 import org.greenrobot.greendao.annotation.Id;
 import org.greenrobot.greendao.annotation.Index;
+import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.annotation.NotNull;
 
 import java.util.Objects;
@@ -20,7 +22,7 @@ import java.util.Objects;
             @Index(value = "company, codeKeyword, codeRegex", unique = true)
         }
 )
-public class SmsCodeRule implements Parcelable {
+public class SmsCodeRule implements Parcelable, CodeRule {
 
     /**
      * id
@@ -51,6 +53,16 @@ public class SmsCodeRule implements Parcelable {
     @NotNull
     private String codeRegex;
 
+    /**
+     * how many times the rule has extracted SMS code, null if it has never hit
+     */
+    private Integer hitCount;
+
+    /**
+     * last hit date in milliseconds, null if it has never hit
+     */
+    private Long lastHitDate;
+
     public SmsCodeRule(String company, @NotNull String codeKeyword,
                        @NotNull String codeRegex) {
         this.company = company;
@@ -67,21 +79,26 @@ public class SmsCodeRule implements Parcelable {
         company = in.readString();
         codeKeyword = in.readString();
         codeRegex = in.readString();
+        hitCount = (Integer) in.readValue(Integer.class.getClassLoader());
+        lastHitDate = (Long) in.readValue(Long.class.getClassLoader());
     }
 
-    @Generated(hash = 1853112924)
+    @Keep
     public SmsCodeRule(Long id, String company, @NotNull String codeKeyword,
-            @NotNull String codeRegex) {
+            @NotNull String codeRegex, Integer hitCount, Long lastHitDate) {
         this.id = id;
         this.company = company;
         this.codeKeyword = codeKeyword;
         this.codeRegex = codeRegex;
+        this.hitCount = hitCount;
+        this.lastHitDate = lastHitDate;
     }
 
     @Generated(hash = 1135501737)
     public SmsCodeRule() {
     }
 
+    @Override
     public String getCompany() {
         return company;
     }
@@ -90,6 +107,7 @@ public class SmsCodeRule implements Parcelable {
         this.company = company;
     }
 
+    @Override
     public String getCodeKeyword() {
         return codeKeyword;
     }
@@ -98,6 +116,7 @@ public class SmsCodeRule implements Parcelable {
         this.codeKeyword = codeKeyword;
     }
 
+    @Override
     public String getCodeRegex() {
         return codeRegex;
     }
@@ -114,6 +133,23 @@ public class SmsCodeRule implements Parcelable {
         this.id = id;
     }
 
+    @Override
+    public Integer getHitCount() {
+        return this.hitCount;
+    }
+
+    public void setHitCount(Integer hitCount) {
+        this.hitCount = hitCount;
+    }
+
+    public Long getLastHitDate() {
+        return this.lastHitDate;
+    }
+
+    public void setLastHitDate(Long lastHitDate) {
+        this.lastHitDate = lastHitDate;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -145,6 +181,8 @@ public class SmsCodeRule implements Parcelable {
         dest.writeString(company);
         dest.writeString(codeKeyword);
         dest.writeString(codeRegex);
+        dest.writeValue(hitCount);
+        dest.writeValue(lastHitDate);
     }
 
     public static final Creator<SmsCodeRule> CREATOR = new Creator<SmsCodeRule>() {
@@ -164,6 +202,8 @@ public class SmsCodeRule implements Parcelable {
         this.company = newRule.company;
         this.codeKeyword = newRule.codeKeyword;
         this.codeRegex = newRule.codeRegex;
+        this.hitCount = newRule.hitCount;
+        this.lastHitDate = newRule.lastHitDate;
     }
 
     @Override
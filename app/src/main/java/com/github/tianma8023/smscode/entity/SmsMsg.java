@@ -6,10 +6,16 @@ import android.os.Parcelable;
 import org.greenrobot.greendao.annotation.Entity;
 import org.greenrobot.greendao.annotation.Generated;
 import org.greenrobot.greendao.annotation.Id;
+import org.greenrobot.greendao.annotation.Index;
 
 import java.util.Objects;
 
-@Entity
+@Entity(
+        indexes = {
+            // for records paging, see DBManager#querySmsMsgSummaryPage()
+            @Index(value = "date DESC, id DESC")
+        }
+)
 public class SmsMsg implements Parcelable {
 
     @Id(autoincrement = true)
@@ -0,0 +1,84 @@
+package com.github.tianma8023.smscode.entity;
+
+/**
+ * Lightweight row of SmsMsg for lists, the body isn't loaded.<br>
+ * It's not cached by greenDAO, load the full SmsMsg by id when the body is needed.
+ */
+public class SmsMsgSummary {
+
+    private final long id;
+
+    // Sender
+    private final String sender;
+
+    // Receive date
+    private final long date;
+
+    // Company
+    private final String company;
+
+    // SMS Code
+    private final String smsCode;
+
+    // Whether the message content isn't empty
+    private final boolean hasBody;
+
+    public SmsMsgSummary(long id, String sender, long date, String company, String smsCode,
+                         boolean hasBody) {
+        this.id = id;
+        this.sender = sender;
+        this.date = date;
+        this.company = company;
+        this.smsCode = smsCode;
+        this.hasBody = hasBody;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    public String getCompany() {
+        return company;
+    }
+
+    public String getSmsCode() {
+        return smsCode;
+    }
+
+    public boolean hasBody() {
+        return hasBody;
+    }
+
+    @Override
+    public String toString() {
+        return "SmsMsgSummary{" +
+                "id=" + id +
+                ", sender='" + sender + '\'' +
+                ", date=" + date +
+                ", company='" + company + '\'' +
+                ", smsCode='" + smsCode + '\'' +
+                ", hasBody=" + hasBody +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SmsMsgSummary)) return false;
+        SmsMsgSummary that = (SmsMsgSummary) o;
+        return id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
+}
@@ -3,8 +3,11 @@ package com.github.tianma8023.smscode.event;
 import com.github.tianma8023.smscode.app.rule.RuleEditFragment;
 import com.github.tianma8023.smscode.backup.ExportResult;
 import com.github.tianma8023.smscode.entity.SmsCodeRule;
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.entity.SmsMsgSummary;
 
 import java.io.File;
+import java.util.List;
 
 public class Event {
 
@@ -60,4 +63,33 @@ public class Event {
             this.template = template;
         }
     }
+
+    /**
+     * Load a page of SMS code records event
+     */
+    public static class SmsMsgPageLoadEvent {
+        // search query, null for all records
+        public String query;
+        // last record of the previous page, null for the first page
+        public SmsMsgSummary lastSummary;
+        public List<SmsMsgSummary> summaries;
+
+        public SmsMsgPageLoadEvent(String query, SmsMsgSummary lastSummary, List<SmsMsgSummary> summaries) {
+            this.query = query;
+            this.lastSummary = lastSummary;
+            this.summaries = summaries;
+        }
+    }
+
+    /**
+     * Load the full SMS message of a code record event
+     */
+    public static class SmsMsgLoadEvent {
+        // null if the record doesn't exist anymore
+        public SmsMsg smsMsg;
+
+        public SmsMsgLoadEvent(SmsMsg smsMsg) {
+            this.smsMsg = smsMsg;
+        }
+    }
 }
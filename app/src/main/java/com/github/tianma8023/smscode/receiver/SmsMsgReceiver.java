@@ -0,0 +1,39 @@
+package com.github.tianma8023.smscode.receiver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.github.tianma8023.smscode.BuildConfig;
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.service.SmsCodeDispatcher;
+import com.github.tianma8023.smscode.utils.XLog;
+
+/**
+ * Receive SMS messages sent from other processes (e.g. SmsObserveService in :background process),
+ * and dispatch them to the {@link SmsCodeDispatcher} in main process.
+ */
+public class SmsMsgReceiver extends BroadcastReceiver {
+
+    private static final String ACTION_HANDLE_SMS_MSG = BuildConfig.APPLICATION_ID + ".action.HANDLE_SMS_MSG";
+    private static final String EXTRA_KEY_SMS_MSG = "key_sms_msg";
+
+    public static void sendSmsMsg(Context context, SmsMsg smsMsg) {
+        Intent intent = new Intent(context, SmsMsgReceiver.class);
+        intent.setAction(ACTION_HANDLE_SMS_MSG);
+        intent.putExtra(EXTRA_KEY_SMS_MSG, smsMsg);
+        context.sendBroadcast(intent);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        XLog.d("SmsMsgReceiver#onReceived() - {}", intent.getAction());
+        if (ACTION_HANDLE_SMS_MSG.equals(intent.getAction())) {
+            SmsMsg smsMsg = intent.getParcelableExtra(EXTRA_KEY_SMS_MSG);
+            if (smsMsg != null) {
+                final PendingResult pendingResult = goAsync();
+                SmsCodeDispatcher.get(context).dispatch(smsMsg, pendingResult);
+            }
+        }
+    }
+}
@@ -8,12 +8,10 @@ import android.provider.Telephony;
 import android.telephony.SmsMessage;
 
 import com.github.tianma8023.smscode.entity.SmsMsg;
-import com.github.tianma8023.smscode.service.SmsCodeHandleService;
+import com.github.tianma8023.smscode.service.SmsCodeDispatcher;
 import com.github.tianma8023.smscode.utils.SmsMessageUtils;
 import com.github.tianma8023.smscode.utils.XLog;
 
-import androidx.core.content.ContextCompat;
-
 public class SmsReceiver extends BroadcastReceiver {
 
     private static final String SMS_RECEIVED = Telephony.Sms.Intents.SMS_RECEIVED_ACTION;
@@ -43,9 +41,10 @@ public class SmsReceiver extends BroadcastReceiver {
                     smsMsg.setSender(sender);
                     smsMsg.setDate(date);
 
-                    Intent smsCodeHandleSvc = new Intent(context, SmsCodeHandleService.class);
-                    smsCodeHandleSvc.putExtra(SmsCodeHandleService.EXTRA_KEY_SMS_MESSAGE_DATA, smsMsg);
-                    ContextCompat.startForegroundService(context, smsCodeHandleSvc);
+                    // parse on the dispatcher's worker thread, keep the process alive
+                    // until the code is copied
+                    final PendingResult pendingResult = goAsync();
+                    SmsCodeDispatcher.get(context).dispatch(smsMsg, pendingResult);
                 }
             }
         }
@@ -0,0 +1,37 @@
+package com.github.tianma8023.smscode.service;
+
+/**
+ * One action performed after the SMS code is parsed, such as auto input or recording.<br>
+ * Actions are run by {@link CodeActionGraph}, an action starts only after all of its
+ * dependencies are finished, independent actions may run concurrently.
+ *
+ * @param <T> the target the action performs on
+ */
+interface CodeAction<T> {
+
+    /**
+     * Unique name of the action, used by the dependencies and the reports.
+     */
+    String getName();
+
+    /**
+     * Names of the actions which must be finished before this one starts.
+     */
+    String[] getDependencies();
+
+    /**
+     * Whether the action should be performed on the target.
+     * A skipped action is treated as finished immediately, so its dependents still run in order.
+     */
+    boolean shouldRun(T target);
+
+    /**
+     * Whether the action may take long, the process should be kept alive until it's finished.
+     */
+    boolean isLongRunning();
+
+    /**
+     * Perform the action, it's called on a worker thread.
+     */
+    void run(T target);
+}
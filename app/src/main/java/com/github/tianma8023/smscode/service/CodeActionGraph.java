@@ -0,0 +1,197 @@
+package com.github.tianma8023.smscode.service;
+
+import android.os.SystemClock;
+
+import com.github.tianma8023.smscode.utils.XLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dependency graph of {@link CodeAction}s.<br>
+ * Every action is submitted to the executor as soon as all of its dependencies are finished,
+ * so independent actions run concurrently. The duration of every action is reported.
+ *
+ * @param <T> the target the actions perform on
+ */
+final class CodeActionGraph<T> {
+
+    interface Callback<T> {
+        /**
+         * Called on the thread which finishes the last action.
+         *
+         * @param durations duration in nanoseconds of every action, in the order the actions were added,
+         *                  -1 if the action was skipped
+         */
+        void onActionsDone(T target, long[] durations);
+    }
+
+    private final List<CodeAction<T>> mActions;
+    // indices of the dependencies of every action
+    private final int[][] mDependencies;
+    // indices of the actions depending on every action
+    private final int[][] mDependents;
+
+    /**
+     * @throws IllegalArgumentException if an action name is duplicated, a dependency is unknown
+     *                                  or the dependencies have a cycle
+     */
+    CodeActionGraph(List<CodeAction<T>> actions) {
+        mActions = new ArrayList<>(actions);
+        final int size = mActions.size();
+
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (indices.put(mActions.get(i).getName(), i) != null) {
+                throw new IllegalArgumentException("Duplicate action: " + mActions.get(i).getName());
+            }
+        }
+
+        mDependencies = new int[size][];
+        List<List<Integer>> dependents = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < size; i++) {
+            String[] names = mActions.get(i).getDependencies();
+            mDependencies[i] = new int[names.length];
+            for (int j = 0; j < names.length; j++) {
+                Integer dependency = indices.get(names[j]);
+                if (dependency == null) {
+                    throw new IllegalArgumentException("Unknown dependency: " + names[j]);
+                }
+                mDependencies[i][j] = dependency;
+                dependents.get(dependency).add(i);
+            }
+        }
+
+        mDependents = new int[size][];
+        for (int i = 0; i < size; i++) {
+            List<Integer> list = dependents.get(i);
+            mDependents[i] = new int[list.size()];
+            for (int j = 0; j < list.size(); j++) {
+                mDependents[i][j] = list.get(j);
+            }
+        }
+
+        checkAcyclic();
+    }
+
+    private void checkAcyclic() {
+        // Kahn's algorithm
+        final int size = mActions.size();
+        int[] pending = new int[size];
+        List<Integer> ready = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            pending[i] = mDependencies[i].length;
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            int index = ready.remove(ready.size() - 1);
+            visited++;
+            for (int dependent : mDependents[index]) {
+                if (--pending[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (visited != size) {
+            throw new IllegalArgumentException("Dependency cycle in actions");
+        }
+    }
+
+    String getActionName(int index) {
+        return mActions.get(index).getName();
+    }
+
+    /**
+     * Whether any action to perform on the target is long-running.
+     */
+    boolean hasLongRunningAction(T target) {
+        for (CodeAction<T> action : mActions) {
+            if (action.isLongRunning() && action.shouldRun(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run the actions on the target.
+     */
+    void execute(T target, Executor executor, Callback<T> callback) {
+        new Execution(target, executor, callback).start();
+    }
+
+    private final class Execution {
+        private final T mTarget;
+        private final Executor mExecutor;
+        private final Callback<T> mCallback;
+        private final AtomicInteger[] mPendingDependencies;
+        private final AtomicInteger mRemaining;
+        private final long[] mDurations;
+
+        Execution(T target, Executor executor, Callback<T> callback) {
+            mTarget = target;
+            mExecutor = executor;
+            mCallback = callback;
+            final int size = mActions.size();
+            mPendingDependencies = new AtomicInteger[size];
+            for (int i = 0; i < size; i++) {
+                mPendingDependencies[i] = new AtomicInteger(mDependencies[i].length);
+            }
+            mRemaining = new AtomicInteger(size);
+            mDurations = new long[size];
+        }
+
+        void start() {
+            if (mActions.isEmpty()) {
+                mCallback.onActionsDone(mTarget, mDurations);
+                return;
+            }
+            for (int i = 0; i < mActions.size(); i++) {
+                if (mDependencies[i].length == 0) {
+                    schedule(i);
+                }
+            }
+        }
+
+        private void schedule(int index) {
+            final CodeAction<T> action = mActions.get(index);
+            if (!action.shouldRun(mTarget)) {
+                mDurations[index] = -1;
+                onActionFinished(index);
+                return;
+            }
+            mExecutor.execute(() -> {
+                long start = SystemClock.elapsedRealtimeNanos();
+                try {
+                    action.run(mTarget);
+                } catch (Throwable t) {
+                    XLog.e("Action " + action.getName() + " failed", t);
+                }
+                mDurations[index] = SystemClock.elapsedRealtimeNanos() - start;
+                onActionFinished(index);
+            });
+        }
+
+        private void onActionFinished(int index) {
+            for (int dependent : mDependents[index]) {
+                if (mPendingDependencies[dependent].decrementAndGet() == 0) {
+                    schedule(dependent);
+                }
+            }
+            // the decrement publishes mDurations writes to the thread finishing the last action
+            if (mRemaining.decrementAndGet() == 0) {
+                mCallback.onActionsDone(mTarget, mDurations);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.tianma8023.smscode.service;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+
+import java.io.Closeable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signal of the changes of a content uri, for waiting until a content provider is updated.<br>
+ * The observer has no handler, so it's notified on binder thread and any thread can wait for it.
+ */
+final class ContentChangeSignal extends ContentObserver implements Closeable {
+
+    private final ContentResolver mResolver;
+    private final Semaphore mChanges = new Semaphore(0);
+
+    ContentChangeSignal(ContentResolver resolver, Uri uri) {
+        super(null);
+        mResolver = resolver;
+        mResolver.registerContentObserver(uri, true, this);
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+        mChanges.release();
+    }
+
+    /**
+     * Wait for the next change, the changes happened since the last call count.
+     *
+     * @return true if changed, false if timeout
+     */
+    boolean await(long timeoutMillis) throws InterruptedException {
+        boolean changed = mChanges.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        // several notifications of the same change are one change
+        mChanges.drainPermits();
+        return changed;
+    }
+
+    @Override
+    public void close() {
+        mResolver.unregisterContentObserver(this);
+    }
+}
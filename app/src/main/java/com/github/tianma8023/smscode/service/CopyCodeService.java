@@ -18,6 +18,7 @@ public class CopyCodeService extends Service {
 
     private static final String ACTION_COPY_CODE = BuildConfig.APPLICATION_ID + ".action.COPY_CODE";
     private static final String EXTRA_KEY_CODE = "key_code";
+    private static final String EXTRA_KEY_NOTIFICATION_ID = "key_notification_id";
 
     public CopyCodeService() {
     }
@@ -29,6 +30,15 @@ public class CopyCodeService extends Service {
         return intent;
     }
 
+    /**
+     * @param notificationId id of the code notification which will be dismissed by the copy
+     */
+    public static Intent createCopyCodeIntent(Context context, String smsCode, int notificationId) {
+        Intent intent = createCopyCodeIntent(context, smsCode);
+        intent.putExtra(EXTRA_KEY_NOTIFICATION_ID, notificationId);
+        return intent;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -41,7 +51,10 @@ public class CopyCodeService extends Service {
             if (ACTION_COPY_CODE.equals(action)) {
                 final String smsCode = intent.getStringExtra(EXTRA_KEY_CODE);
                 handleActionCopyCode(smsCode);
-                sendStopHandleServiceBroadcast(this);
+                if (intent.hasExtra(EXTRA_KEY_NOTIFICATION_ID)) {
+                    int notificationId = intent.getIntExtra(EXTRA_KEY_NOTIFICATION_ID, 0);
+                    SmsCodeDispatcher.get(this).onCodeNotificationDismissed(notificationId);
+                }
             }
         }
         stopSelf();
@@ -54,10 +67,4 @@ public class CopyCodeService extends Service {
         String content = getString(R.string.prompt_sms_code_copied, smsCode);
         Toast.makeText(this, content, Toast.LENGTH_LONG).show();
     }
-
-    private void sendStopHandleServiceBroadcast(Context context) {
-        Intent intent = new Intent();
-        intent.setAction(SmsCodeHandleService.ACTION_STOP_HANDLE_SERVICE);
-        context.sendBroadcast(intent);
-    }
 }
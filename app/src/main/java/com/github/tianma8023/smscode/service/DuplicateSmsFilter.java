@@ -0,0 +1,122 @@
+package com.github.tianma8023.smscode.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory filter of duplicate SMS messages, shared by all intake paths (SmsReceiver and
+ * SmsObserveService may both report the same message).<br>
+ * A message is identified by the fingerprint of its sender, body and time bucket.
+ * The recent fingerprints are kept in a bounded lock-free ring, the oldest one is evicted first.
+ * Each slot holds a fingerprint and the ring position it's claimed for, a slot is claimed by CAS,
+ * so a message reported by several threads at once is accepted only once.
+ */
+final class DuplicateSmsFilter {
+
+    // messages within the adjacent buckets are duplicates
+    private static final long BUCKET_MILLIS = 5000;
+    // fingerprint of an empty slot
+    private static final int EMPTY = 0;
+
+    private final AtomicLongArray mFingerprints;
+    private final AtomicInteger mCursor = new AtomicInteger(0);
+    private final int mMask;
+
+    /**
+     * @param capacity max count of the remembered messages, must be a power of 2
+     */
+    DuplicateSmsFilter(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2");
+        }
+        mFingerprints = new AtomicLongArray(capacity);
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Return true if the same message has been seen recently, otherwise remember it and return false.
+     */
+    boolean isDuplicate(String sender, String body, long date) {
+        final long messageHash = messageHash(sender, body);
+        final long bucket = date / BUCKET_MILLIS;
+        final int fingerprint = fingerprint(messageHash, bucket);
+        final int previousFingerprint = fingerprint(messageHash, bucket - 1);
+        final int nextFingerprint = fingerprint(messageHash, bucket + 1);
+        while (true) {
+            final int position = mCursor.get();
+            final int slot = position & mMask;
+            final long evicted = mFingerprints.get(slot);
+            if (fingerprintOf(evicted) != EMPTY && positionOf(evicted) - position >= 0) {
+                // the position is claimed by another message, help it advance the cursor
+                mCursor.compareAndSet(position, position + 1);
+                continue;
+            }
+            if (contains(fingerprint) || contains(previousFingerprint) || contains(nextFingerprint)) {
+                return true;
+            }
+            if (mFingerprints.compareAndSet(slot, evicted, entry(position, fingerprint))) {
+                mCursor.compareAndSet(position, position + 1);
+                return false;
+            }
+            // lost the slot to another message, check against it again
+        }
+    }
+
+    private boolean contains(int fingerprint) {
+        for (int i = 0; i < mFingerprints.length(); i++) {
+            if (fingerprintOf(mFingerprints.get(i)) == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long entry(int position, int fingerprint) {
+        return ((long) position << 32) | (fingerprint & 0xffffffffL);
+    }
+
+    private static int positionOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int fingerprintOf(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of sender and body.
+     */
+    private static long messageHash(String sender, String body) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv1a(hash, sender);
+        // separator, so that ("ab", "c") differs from ("a", "bc")
+        hash = (hash ^ 0xffff) * 0x100000001b3L;
+        hash = fnv1a(hash, body);
+        return hash;
+    }
+
+    private static long fnv1a(long hash, String text) {
+        if (text == null) {
+            return hash;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 32 bits are plenty for the few remembered messages, the other half of the slot is the position.
+     */
+    private static int fingerprint(long messageHash, long bucket) {
+        // MurmurHash3 fmix64
+        long h = messageHash ^ (bucket * 0x9e3779b97f4a7c15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        int fingerprint = (int) (h ^ (h >>> 32));
+        return fingerprint == EMPTY ? 1 : fingerprint;
+    }
+}
@@ -5,6 +5,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.os.SystemClock;
 import android.provider.Telephony;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
@@ -14,6 +15,9 @@ import com.github.tianma8023.smscode.BuildConfig;
 import com.github.tianma8023.smscode.entity.SmsMsg;
 import com.github.tianma8023.smscode.utils.XLog;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Notification Listener Service
  */
@@ -23,6 +27,11 @@ public class NotificationMonitorService extends NotificationListenerService {
 
     public static final String EXTRA_KEY_SMS_MSG = "extra_key_sms_msg";
 
+    // max time waiting for the SMS notification to be posted
+    private static final long BLOCK_TIMEOUT_MILLIS = 10000;
+    // max count of the SMS waiting for their notifications
+    private static final int MAX_PENDING_SMS_COUNT = 16;
+
     private class NotificationControllerReceiver extends BroadcastReceiver {
 
         @Override
@@ -30,7 +39,7 @@ public class NotificationMonitorService extends NotificationListenerService {
             String action = intent.getAction();
             XLog.d("NotificationReceiver received: {}", action);
             if (ACTION_BLOCK_SMS_NOTIFICATION.equals(action)) {
-                mSmsMsg = intent.getParcelableExtra(EXTRA_KEY_SMS_MSG);
+                addSmsMsgToBlock(intent.getParcelableExtra(EXTRA_KEY_SMS_MSG));
                 performCancelNotification();
             }
         }
@@ -38,7 +47,9 @@ public class NotificationMonitorService extends NotificationListenerService {
 
     private NotificationControllerReceiver mControllerReceiver;
 
-    private SmsMsg mSmsMsg;
+    // the SMS whose notifications are to be blocked, they are kept until the notification is posted or timeout
+    private final List<SmsMsg> mPendingSmsMsgs = new ArrayList<>();
+    private final List<Long> mBlockDeadlines = new ArrayList<>();
 
     @Override
     public void onListenerConnected() {
@@ -70,11 +81,34 @@ public class NotificationMonitorService extends NotificationListenerService {
         }
     }
 
+    private synchronized void addSmsMsgToBlock(SmsMsg smsMsg) {
+        if (smsMsg == null) {
+            return;
+        }
+        if (mPendingSmsMsgs.size() >= MAX_PENDING_SMS_COUNT) {
+            removePendingSmsMsg(0);
+        }
+        mPendingSmsMsgs.add(smsMsg);
+        mBlockDeadlines.add(SystemClock.elapsedRealtime() + BLOCK_TIMEOUT_MILLIS);
+    }
+
+    private void removePendingSmsMsg(int index) {
+        mPendingSmsMsgs.remove(index);
+        mBlockDeadlines.remove(index);
+    }
+
     /**
      * Try to cancel code message notification
      */
     private synchronized void performCancelNotification() {
-        if (mSmsMsg == null) {
+        final long now = SystemClock.elapsedRealtime();
+        for (int i = mPendingSmsMsgs.size() - 1; i >= 0; i--) {
+            if (now > mBlockDeadlines.get(i)) {
+                XLog.d("SMS notification not posted in time");
+                removePendingSmsMsg(i);
+            }
+        }
+        if (mPendingSmsMsgs.isEmpty()) {
             return;
         }
 
@@ -83,10 +117,6 @@ public class NotificationMonitorService extends NotificationListenerService {
             return;
         }
 
-        String sender = mSmsMsg.getSender();
-        String smsCode = mSmsMsg.getSmsCode();
-        String smsBody = mSmsMsg.getBody();
-
         StatusBarNotification[] sbnArr;
         try {
             sbnArr = getActiveNotifications();
@@ -105,21 +135,31 @@ public class NotificationMonitorService extends NotificationListenerService {
 
 
                 XLog.d("Notification title = {}, text = {}", title, text);
-                boolean hit = false;
-
-                if (title != null && title.toString().contains(sender)) {
-                    hit = true;
-                } else if (text != null && (text.equals(smsBody) || text.toString().contains(smsCode))) {
-                    hit = true;
+                for (int i = 0; i < mPendingSmsMsgs.size(); i++) {
+                    SmsMsg smsMsg = mPendingSmsMsgs.get(i);
+                    String sender = smsMsg.getSender();
+                    String smsCode = smsMsg.getSmsCode();
+                    String smsBody = smsMsg.getBody();
+
+                    boolean hit = false;
+
+                    if (title != null && title.toString().contains(sender)) {
+                        hit = true;
+                    } else if (text != null && (text.equals(smsBody) || text.toString().contains(smsCode))) {
+                        hit = true;
+                    }
+
+                    if (hit) {
+                        cancelNotification(sbn.getKey());
+                        XLog.i("Block sms notification succeed");
+                        removePendingSmsMsg(i);
+                        break;
+                    }
                 }
-
-                if (hit) {
-                    cancelNotification(sbn.getKey());
-                    XLog.i("Block sms notification succeed");
+                if (mPendingSmsMsgs.isEmpty()) {
                     break;
                 }
             }
         }
-        mSmsMsg = null;
     }
 }
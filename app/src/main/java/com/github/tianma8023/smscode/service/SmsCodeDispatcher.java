@@ -0,0 +1,977 @@
+package com.github.tianma8023.smscode.service;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.BroadcastReceiver.PendingResult;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.provider.Telephony;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.widget.Toast;
+
+import com.github.tianma8023.smscode.BuildConfig;
+import com.github.tianma8023.smscode.R;
+import com.github.tianma8023.smscode.app.record.CodeRecordsActivity;
+import com.github.tianma8023.smscode.constant.NotificationConst;
+import com.github.tianma8023.smscode.constant.PrefConst;
+import com.github.tianma8023.smscode.db.DBManager;
+import com.github.tianma8023.smscode.db.DbFuture;
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.service.accessibility.SmsCodeAutoInputService;
+import com.github.tianma8023.smscode.utils.AccessibilityUtils;
+import com.github.tianma8023.smscode.utils.ClipboardUtils;
+import com.github.tianma8023.smscode.utils.ShellUtils;
+import com.github.tianma8023.smscode.utils.SmsCodeConfig;
+import com.github.tianma8023.smscode.utils.SmsCodeUtils;
+import com.github.tianma8023.smscode.utils.StringUtils;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+/**
+ * 处理验证码短信的常驻 pipeline.<br>
+ * The worker thread stays warm for the whole process, messages are dispatched to it directly.
+ * Messages arriving within a short window are coalesced and handled as one batch,
+ * the first message of a quiet period is handled at once.
+ * {@link SmsCodeHandleService} is started as foreground service only while long-running work
+ * is pending, so that the process won't be killed before the work is done.<br>
+ * Cheap actions (clipboard, toast) are performed right after parsing, the others
+ * (auto input, notification, inbox operations, recording) are {@link CodeAction}s,
+ * independent ones run concurrently on a small executor.
+ */
+public final class SmsCodeDispatcher {
+
+    private static final String THREAD_NAME = "SmsCodeDispatcher";
+
+    public static final String ACTION_CODE_NOTIFICATION_DISMISSED =
+            BuildConfig.APPLICATION_ID + ".action.CODE_NOTIFICATION_DISMISSED";
+    public static final String EXTRA_KEY_NOTIFICATION_ID = "key_notification_id";
+
+    private static final int MSG_HANDLE_SMS = 0;
+    private static final int MSG_COPY_TO_CLIPBOARD = 1;
+    private static final int MSG_SHOW_TOAST = 2;
+    private static final int MSG_CLEAR_CLIPBOARD = 3;
+    private static final int MSG_SCHEDULE_CANCEL_NOTIFICATION = 4;
+    private static final int MSG_CANCEL_NOTIFICATION = 5;
+    private static final int MSG_NOTIFICATION_DISMISSED = 6;
+    private static final int MSG_FLUSH_BATCH = 7;
+    private static final int MSG_CODE_NOTIFICATION_SHOWN = 8;
+    private static final int MSG_SHOW_CODE_SUMMARY = 9;
+
+    // messages arriving within the window after the last batch are coalesced into the next batch
+    private static final long COALESCE_WINDOW_MILLIS = 200;
+    // a full batch is flushed at once
+    private static final int MAX_BATCH_SIZE = 16;
+    // messages beyond it are dropped under a flood
+    private static final int MAX_QUEUED_SMS_COUNT = 64;
+
+    private static final String ACTION_ENABLE_ACCESSIBILITY_SERVICE = "enable_accessibility_service";
+    private static final String ACTION_AUTO_INPUT_CODE = "auto_input_code";
+    private static final String ACTION_CLEAR_CLIPBOARD = "clear_clipboard";
+    private static final String ACTION_SHOW_CODE_NOTIFICATION = "show_code_notification";
+    private static final String ACTION_RECORD_SMS_MSG = "record_sms_msg";
+    private static final String ACTION_OPERATE_SMS = "operate_sms";
+
+    // max time waiting for the accessibility service to be connected after it's enabled
+    private static final long ACCESSIBILITY_CONNECT_TIMEOUT_MILLIS = 3000;
+    // max time waiting for the SMS to be written into the inbox
+    private static final long INBOX_WRITE_TIMEOUT_MILLIS = 5000;
+
+    // enough for the slow actions (root shell, inbox operations) not to block the others
+    private static final int ACTION_THREAD_COUNT = 3;
+    private static final long ACTION_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    // max count of the recent messages remembered for duplicate detection
+    private static final int RECENT_SMS_CAPACITY = 32;
+
+    private static volatile SmsCodeDispatcher sInstance;
+
+    private final Context mContext;
+    private final Handler mUiHandler;
+    private final Handler mWorkerHandler;
+    private final ExecutorService mActionExecutor;
+    private final CodeActionGraph<SmsBatch> mActionGraph;
+
+    // messages dispatched but not handled yet
+    private final AtomicInteger mQueuedSmsCount = new AtomicInteger(0);
+    // accessed on worker thread only
+    private final List<IncomingSms> mPendingBatch = new ArrayList<>();
+    private long mLastFlushTime = -COALESCE_WINDOW_MILLIS;
+
+    // long-running work which needs the foreground service
+    private final AtomicInteger mPendingLongWorkCount = new AtomicInteger(0);
+    // accessed on main thread only
+    private SmsCodeHandleService mService;
+
+    // accessed on worker thread only
+    private final DuplicateSmsFilter mDuplicateFilter = new DuplicateSmsFilter(RECENT_SMS_CAPACITY);
+
+    // pending auto cancel messages of the code notifications, accessed on worker thread only
+    private final SparseArray<Integer> mPendingCancelTokens = new SparseArray<>();
+    // code notifications being shown and whether their group summary is shown, accessed on worker thread only
+    private final SparseBooleanArray mShownCodeNotifications = new SparseBooleanArray();
+    private boolean mCodeSummaryShown;
+    private CommandReceiver mCommandReceiver;
+
+    private Bitmap mAppIcon;
+
+    /**
+     * SMS message to handle, with the time it's received.
+     */
+    private static final class IncomingSms {
+        final SmsMsg mSmsMsg;
+        // see StageLatencyRecorder#now()
+        final long mReceivedAt;
+        // pending result of the receiver which received the message, nullable
+        final PendingResult mPendingResult;
+
+        IncomingSms(SmsMsg smsMsg, PendingResult pendingResult) {
+            mSmsMsg = smsMsg;
+            mReceivedAt = StageLatencyRecorder.now();
+            mPendingResult = pendingResult;
+        }
+    }
+
+    /**
+     * SMS code messages of one batch, with the settings they are handled with.
+     */
+    private static final class SmsBatch {
+        // oldest first
+        final List<IncomingSms> mCodeSmsList;
+        // settings snapshot read once when the handling starts
+        final SmsCodeConfig mConfig;
+        volatile boolean mAutoInputSucceed;
+
+        SmsBatch(List<IncomingSms> codeSmsList, SmsCodeConfig config) {
+            mCodeSmsList = codeSmsList;
+            mConfig = config;
+        }
+
+        IncomingSms getLatest() {
+            return mCodeSmsList.get(mCodeSmsList.size() - 1);
+        }
+    }
+
+    private SmsCodeDispatcher(Context context) {
+        mContext = context.getApplicationContext();
+
+        HandlerThread workerThread = new HandlerThread(THREAD_NAME);
+        workerThread.start();
+
+        mUiHandler = new DispatchHandler(Looper.getMainLooper());
+        mWorkerHandler = new DispatchHandler(workerThread.getLooper());
+
+        ThreadPoolExecutor actionExecutor = new ThreadPoolExecutor(
+                ACTION_THREAD_COUNT, ACTION_THREAD_COUNT,
+                ACTION_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ActionThreadFactory());
+        actionExecutor.allowCoreThreadTimeOut(true);
+        mActionExecutor = actionExecutor;
+        mActionGraph = new CodeActionGraph<>(createActions());
+
+        // warm up the shared extractor before the first message comes
+        mWorkerHandler.post(() -> SmsCodeUtils.getExtractor(mContext).getRuleSet());
+    }
+
+    public static SmsCodeDispatcher get(Context context) {
+        if (sInstance == null) {
+            synchronized (SmsCodeDispatcher.class) {
+                if (sInstance == null) {
+                    sInstance = new SmsCodeDispatcher(context);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Dispatch the SMS message to the worker thread.
+     */
+    public void dispatch(SmsMsg smsMsg) {
+        dispatch(smsMsg, null);
+    }
+
+    /**
+     * Dispatch the SMS message received by a receiver which has called
+     * {@link BroadcastReceiver#goAsync()}, the pending result is finished after the cheap actions are done.
+     */
+    public void dispatch(SmsMsg smsMsg, PendingResult pendingResult) {
+        if (mQueuedSmsCount.incrementAndGet() > MAX_QUEUED_SMS_COUNT) {
+            mQueuedSmsCount.decrementAndGet();
+            XLog.w("Too many SMS queued, drop it");
+            if (pendingResult != null) {
+                pendingResult.finish();
+            }
+            return;
+        }
+        IncomingSms incomingSms = new IncomingSms(smsMsg, pendingResult);
+        mWorkerHandler.obtainMessage(MSG_HANDLE_SMS, incomingSms).sendToTarget();
+    }
+
+    /**
+     * The code notification is dismissed by user, no need to cancel it anymore.
+     */
+    public void onCodeNotificationDismissed(int notificationId) {
+        mWorkerHandler.obtainMessage(MSG_NOTIFICATION_DISMISSED, notificationId, 0).sendToTarget();
+    }
+
+    private void enqueueSms(IncomingSms incomingSms) {
+        mPendingBatch.add(incomingSms);
+        if (mPendingBatch.size() >= MAX_BATCH_SIZE) {
+            mWorkerHandler.removeMessages(MSG_FLUSH_BATCH);
+            flushBatch();
+        } else if (!mWorkerHandler.hasMessages(MSG_FLUSH_BATCH)) {
+            // messages already queued are handled before the flush, so a burst is still coalesced
+            long delay = mLastFlushTime + COALESCE_WINDOW_MILLIS - SystemClock.elapsedRealtime();
+            mWorkerHandler.sendEmptyMessageDelayed(MSG_FLUSH_BATCH, Math.max(0, delay));
+        }
+    }
+
+    private void flushBatch() {
+        if (mPendingBatch.isEmpty()) {
+            return;
+        }
+        List<IncomingSms> batch = new ArrayList<>(mPendingBatch);
+        mPendingBatch.clear();
+        mLastFlushTime = SystemClock.elapsedRealtime();
+        mQueuedSmsCount.addAndGet(-batch.size());
+        try {
+            handleBatch(batch);
+        } finally {
+            for (IncomingSms incomingSms : batch) {
+                if (incomingSms.mPendingResult != null) {
+                    // after the cheap actions posted to main thread
+                    mUiHandler.post(incomingSms.mPendingResult::finish);
+                }
+            }
+        }
+    }
+
+    private void handleBatch(List<IncomingSms> batch) {
+        final SmsCodeConfig config = SmsCodeConfig.get(mContext);
+        if (!config.isEnable()) {
+            XLog.i("SmsCode disabled, exiting");
+            return;
+        }
+        if (batch.size() > 1) {
+            XLog.d("Handle {} SMS in one batch", batch.size());
+        }
+
+        List<IncomingSms> codeSmsList = new ArrayList<>();
+        for (IncomingSms incomingSms : batch) {
+            if (parseSmsCode(incomingSms)) {
+                codeSmsList.add(incomingSms);
+            }
+        }
+        if (codeSmsList.isEmpty()) {
+            return;
+        }
+        final SmsBatch smsBatch = new SmsBatch(codeSmsList, config);
+
+        // only the latest code is useful to clipboard and toast
+        // 是否需要复制到剪切板
+        if (config.copyToClipboardEnabled()) {
+            Message copyMsg = mUiHandler.obtainMessage(MSG_COPY_TO_CLIPBOARD, smsBatch.getLatest());
+            mUiHandler.sendMessage(copyMsg);
+        }
+
+        // 是否显示Toast
+        if (config.showToast()) {
+            Message toastMsg = mUiHandler.obtainMessage(MSG_SHOW_TOAST, smsBatch.getLatest());
+            mUiHandler.sendMessage(toastMsg);
+        }
+
+        for (IncomingSms incomingSms : codeSmsList) {
+            SmsMsg smsMsg = incomingSms.mSmsMsg;
+            smsMsg.setCompany(SmsCodeUtils.parseCompany(smsMsg.getBody()));
+        }
+
+        // 自动输入, 通知, 记录, 删除或标记已读
+        final boolean longWork = mActionGraph.hasLongRunningAction(smsBatch);
+        if (longWork) {
+            beginLongWork();
+        }
+        mActionGraph.execute(smsBatch, mActionExecutor, (target, durations) -> {
+            reportActionDurations(durations);
+            if (longWork) {
+                endLongWork();
+            }
+        });
+
+        // 是否拦截验证码短信通知
+        if (config.blockNotificationEnabled()) {
+            // block sms notification, it's blocked as soon as it's posted
+            for (IncomingSms incomingSms : codeSmsList) {
+                Intent intent = new Intent(NotificationMonitorService.ACTION_BLOCK_SMS_NOTIFICATION);
+                intent.putExtra(NotificationMonitorService.EXTRA_KEY_SMS_MSG, incomingSms.mSmsMsg);
+                mContext.sendBroadcast(intent);
+            }
+        }
+    }
+
+    /**
+     * Parse the SMS code of the message.
+     *
+     * @return true if it's a new SMS code message
+     */
+    private boolean parseSmsCode(IncomingSms incomingSms) {
+        final StageLatencyRecorder latencyRecorder = StageLatencyRecorder.get();
+        latencyRecorder.record(StageLatencyRecorder.STAGE_RECEIVE, incomingSms.mReceivedAt);
+        SmsMsg smsMsg = incomingSms.mSmsMsg;
+
+        String sender = smsMsg.getSender();
+        String msgBody = smsMsg.getBody();
+        long date = smsMsg.getDate();
+
+        if (mDuplicateFilter.isDuplicate(sender, msgBody, date)) {
+            // duplicate SMS message
+            XLog.d("Duplicate SMS, exiting");
+            return false;
+        }
+        latencyRecorder.record(StageLatencyRecorder.STAGE_DEDUP, incomingSms.mReceivedAt);
+
+        if (BuildConfig.DEBUG) {
+            XLog.i("Sender: {}", sender);
+            XLog.i("Body: {}", msgBody);
+        } else {
+            XLog.i("Sender: {}", StringUtils.escape(sender));
+            XLog.i("Body: {}", StringUtils.escape(msgBody));
+        }
+
+        if (TextUtils.isEmpty(msgBody)) {
+            return false;
+        }
+        String smsCode = SmsCodeUtils.parseSmsCodeIfExists(mContext, msgBody);
+
+        latencyRecorder.record(StageLatencyRecorder.STAGE_PARSE, incomingSms.mReceivedAt);
+        if (TextUtils.isEmpty(smsCode)) { // Not SMS code msg.
+            return false;
+        }
+
+        XLog.i("Sms code: {}", smsCode);
+        smsMsg.setSmsCode(smsCode);
+        return true;
+    }
+
+    /**
+     * Send the message of long-running work, the work must call {@link #endLongWork()} when it's done.
+     */
+    private void sendLongWorkMessage(Message msg, long delayMillis) {
+        beginLongWork();
+        msg.getTarget().sendMessageDelayed(msg, delayMillis);
+    }
+
+    private List<CodeAction<SmsBatch>> createActions() {
+        List<CodeAction<SmsBatch>> actions = new ArrayList<>();
+
+        // 是否需要启动 AccessibilityService
+        actions.add(new SmsAction(ACTION_ENABLE_ACCESSIBILITY_SERVICE, true) {
+            @Override
+            public boolean shouldRun(SmsBatch target) {
+                SmsCodeConfig config = target.mConfig;
+                // Root mode + Auto Focus Mode
+                return config.autoInputCodeEnabled()
+                        && PrefConst.AUTO_INPUT_MODE_ROOT.equals(config.getAutoInputMode())
+                        && PrefConst.FOCUS_MODE_AUTO.equals(config.getFocusMode());
+            }
+
+            @Override
+            public void run(SmsBatch target) {
+                enableAccessibilityService();
+            }
+        });
+
+        // 是否自动输入, only the latest code is input
+        actions.add(new SmsAction(ACTION_AUTO_INPUT_CODE, true, ACTION_ENABLE_ACCESSIBILITY_SERVICE) {
+            @Override
+            public boolean shouldRun(SmsBatch target) {
+                return target.mConfig.autoInputCodeEnabled();
+            }
+
+            @Override
+            public void run(SmsBatch target) {
+                target.mAutoInputSucceed = handleAutoInputCode(target.getLatest(), target.mConfig);
+            }
+        });
+
+        // 自动输入成功后是否清理剪切板 (accessibility service clears it by itself)
+        actions.add(new SmsAction(ACTION_CLEAR_CLIPBOARD, false, ACTION_AUTO_INPUT_CODE) {
+            @Override
+            public boolean shouldRun(SmsBatch target) {
+                SmsCodeConfig config = target.mConfig;
+                return config.autoInputCodeEnabled()
+                        && PrefConst.AUTO_INPUT_MODE_ROOT.equals(config.getAutoInputMode())
+                        && PrefConst.FOCUS_MODE_MANUAL.equals(config.getFocusMode())
+                        && config.copyToClipboardEnabled()
+                        && config.shouldClearClipboard();
+            }
+
+            @Override
+            public void run(SmsBatch target) {
+                if (target.mAutoInputSucceed) {
+                    mUiHandler.sendEmptyMessage(MSG_CLEAR_CLIPBOARD);
+                }
+            }
+        });
+
+        // 是否显示通知
+        actions.add(new SmsAction(ACTION_SHOW_CODE_NOTIFICATION, false) {
+            @Override
+            public boolean shouldRun(SmsBatch target) {
+                return target.mConfig.showCodeNotification();
+            }
+
+            @Override
+            public void run(SmsBatch target) {
+                for (IncomingSms incomingSms : target.mCodeSmsList) {
+                    showCodeNotification(incomingSms, target.mConfig);
+                }
+                if (target.mCodeSmsList.size() > 1) {
+                    // posted after the children are tracked on the worker thread
+                    mWorkerHandler.obtainMessage(MSG_SHOW_CODE_SUMMARY, target.mCodeSmsList).sendToTarget();
+                }
+            }
+        });
+
+        // 是否记录验证码短信
+        actions.add(new SmsAction(ACTION_RECORD_SMS_MSG, false) {
+            @Override
+            public boolean shouldRun(SmsBatch target) {
+                return target.mConfig.recordSmsCodeEnabled();
+            }
+
+            @Override
+            public void run(SmsBatch target) {
+                recordSmsMsgList(target.mCodeSmsList, target.mConfig);
+            }
+        });
+
+        // 是否删除验证码短信或标记为已读
+        actions.add(new SmsAction(ACTION_OPERATE_SMS, true) {
+            @Override
+            public boolean shouldRun(SmsBatch target) {
+                return target.mConfig.deleteSmsEnabled() || target.mConfig.markAsReadEnabled();
+            }
+
+            @Override
+            public void run(SmsBatch target) {
+                @SmsInboxOperator.SmsOp int smsOp = target.mConfig.deleteSmsEnabled() ?
+                        SmsInboxOperator.OP_DELETE : SmsInboxOperator.OP_MARK_AS_READ;
+                operateSmsWhenWritten(target.mCodeSmsList, smsOp);
+            }
+        });
+
+        return actions;
+    }
+
+    private void reportActionDurations(long[] durations) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < durations.length; i++) {
+            if (durations[i] < 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(mActionGraph.getActionName(i)).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(durations[i])).append("ms");
+        }
+        if (sb.length() > 0) {
+            XLog.i("Actions done: {}", sb);
+        }
+    }
+
+    private void beginLongWork() {
+        if (mPendingLongWorkCount.getAndIncrement() == 0) {
+            // promote to foreground service, so that the process survives until the work is done
+            Intent intent = new Intent(mContext, SmsCodeHandleService.class);
+            try {
+                ContextCompat.startForegroundService(mContext, intent);
+            } catch (IllegalStateException e) {
+                // background start isn't allowed (e.g. ForegroundServiceStartNotAllowedException on Android 12+),
+                // the work still runs, just without keeping the process alive
+                XLog.e("Start SmsCodeHandleService failed", e);
+            }
+        }
+    }
+
+    private void endLongWork() {
+        if (mPendingLongWorkCount.decrementAndGet() <= 0) {
+            mUiHandler.post(this::stopServiceIfIdle);
+        }
+    }
+
+    boolean hasPendingLongWork() {
+        return mPendingLongWorkCount.get() > 0;
+    }
+
+    /**
+     * Called by {@link SmsCodeHandleService} on main thread when it's started.
+     */
+    void onServiceStarted(SmsCodeHandleService service) {
+        mService = service;
+        stopServiceIfIdle();
+    }
+
+    /**
+     * Called by {@link SmsCodeHandleService} on main thread when it's destroyed.
+     */
+    void onServiceDestroyed(SmsCodeHandleService service) {
+        if (mService == service) {
+            mService = null;
+        }
+    }
+
+    private void stopServiceIfIdle() {
+        if (mService != null && !hasPendingLongWork()) {
+            mService.stopSelf();
+            mService = null;
+            XLog.d("No pending long work, stop foreground service");
+        }
+    }
+
+    /**
+     * Action performed on {@link SmsBatch}.
+     */
+    private abstract static class SmsAction implements CodeAction<SmsBatch> {
+        private final String mName;
+        private final boolean mLongRunning;
+        private final String[] mDependencies;
+
+        SmsAction(String name, boolean longRunning, String... dependencies) {
+            mName = name;
+            mLongRunning = longRunning;
+            mDependencies = dependencies;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public String[] getDependencies() {
+            return mDependencies;
+        }
+
+        @Override
+        public boolean isLongRunning() {
+            return mLongRunning;
+        }
+    }
+
+    private static class ActionThreadFactory implements ThreadFactory {
+        private final AtomicInteger mThreadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, THREAD_NAME + "-action-" + mThreadCount.incrementAndGet());
+        }
+    }
+
+    private class DispatchHandler extends Handler {
+        DispatchHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_HANDLE_SMS: {
+                    enqueueSms((IncomingSms) msg.obj);
+                    break;
+                }
+                case MSG_FLUSH_BATCH: {
+                    flushBatch();
+                    break;
+                }
+                case MSG_COPY_TO_CLIPBOARD: {
+                    copyToClipboard((IncomingSms) msg.obj);
+                    break;
+                }
+                case MSG_SHOW_TOAST: {
+                    showToast((IncomingSms) msg.obj);
+                    break;
+                }
+                case MSG_CLEAR_CLIPBOARD: {
+                    clearClipboard();
+                    break;
+                }
+                case MSG_SCHEDULE_CANCEL_NOTIFICATION: {
+                    scheduleCancelNotification(msg.arg1, msg.arg2);
+                    break;
+                }
+                case MSG_CANCEL_NOTIFICATION: {
+                    int notificationId = (Integer) msg.obj;
+                    mPendingCancelTokens.remove(notificationId);
+                    cancelNotification(notificationId);
+                    onCodeNotificationGone(notificationId);
+                    endLongWork();
+                    break;
+                }
+                case MSG_CODE_NOTIFICATION_SHOWN: {
+                    onCodeNotificationShown(msg.arg1);
+                    break;
+                }
+                case MSG_SHOW_CODE_SUMMARY: {
+                    @SuppressWarnings("unchecked")
+                    List<IncomingSms> codeSmsList = (List<IncomingSms>) msg.obj;
+                    showCodeSummaryNotification(codeSmsList);
+                    break;
+                }
+                case MSG_NOTIFICATION_DISMISSED: {
+                    onNotificationDismissed(msg.arg1);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unsupported msg type");
+            }
+        }
+    }
+
+    private void enableAccessibilityService() {
+        String accessSvcName = AccessibilityUtils.getServiceName(SmsCodeAutoInputService.class);
+        // 用root的方式启动
+        boolean enabled = ShellUtils.enableAccessibilityService(accessSvcName);
+        XLog.d("Accessibility enabled by Root: {}", enabled);
+        if (enabled) { // waiting for AutoInputService working on.
+            boolean connected = SmsCodeAutoInputService.waitForConnected(ACCESSIBILITY_CONNECT_TIMEOUT_MILLIS);
+            XLog.d("Accessibility service connected: {}", connected);
+        }
+    }
+
+    private void copyToClipboard(IncomingSms incomingSms) {
+        ClipboardUtils.copyToClipboard(mContext, incomingSms.mSmsMsg.getSmsCode());
+        StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_CLIPBOARD, incomingSms.mReceivedAt);
+        XLog.i("SMS to clipboard: {} ms",
+                TimeUnit.NANOSECONDS.toMillis(StageLatencyRecorder.now() - incomingSms.mReceivedAt));
+    }
+
+    /**
+     * @return true if the code is input by root, the accessibility service reports nothing
+     */
+    private boolean handleAutoInputCode(IncomingSms incomingSms, SmsCodeConfig config) {
+        final String smsCode = incomingSms.mSmsMsg.getSmsCode();
+        if (PrefConst.AUTO_INPUT_MODE_ROOT.equals(config.getAutoInputMode())
+                && PrefConst.FOCUS_MODE_MANUAL.equals(config.getFocusMode())) {
+            // focus mode: manual focus
+            // input mode: root mode
+            StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_AUTO_INPUT_BROADCAST, incomingSms.mReceivedAt);
+            boolean success = ShellUtils.inputText(smsCode);
+            if (success) {
+                StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_TEXT_SET, incomingSms.mReceivedAt);
+                XLog.i("Auto input succeed");
+            }
+            return success;
+        } else {
+            // start auto input
+            Intent intent = new Intent(SmsCodeAutoInputService.ACTION_START_AUTO_INPUT);
+            intent.putExtra(SmsCodeAutoInputService.EXTRA_KEY_SMS_CODE, smsCode);
+            intent.putExtra(SmsCodeAutoInputService.EXTRA_KEY_RECEIVED_AT, incomingSms.mReceivedAt);
+            mContext.sendBroadcast(intent);
+            StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_AUTO_INPUT_BROADCAST, incomingSms.mReceivedAt);
+            return false;
+        }
+    }
+
+    private void clearClipboard() {
+        ClipboardUtils.clearClipboard(mContext);
+    }
+
+    private void showToast(IncomingSms incomingSms) {
+        String text = mContext.getString(R.string.cur_verification_code, incomingSms.mSmsMsg.getSmsCode());
+        Toast.makeText(mContext, text, Toast.LENGTH_LONG).show();
+        StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_TOAST, incomingSms.mReceivedAt);
+    }
+
+    /**
+     * The SMS may not be written into the inbox yet when it's received,
+     * so commit the pending operations again whenever the inbox changes, until all done or timeout.
+     */
+    private void operateSmsWhenWritten(List<IncomingSms> codeSmsList, @SmsInboxOperator.SmsOp int smsOp) {
+        if (ContextCompat.checkSelfPermission(mContext, Manifest.permission.READ_SMS)
+                != PackageManager.PERMISSION_GRANTED) {
+            XLog.e("Don't have permission to read/write sms");
+            return;
+        }
+        SmsInboxOperator operator = new SmsInboxOperator(mContext.getContentResolver());
+        for (IncomingSms incomingSms : codeSmsList) {
+            operator.enqueue(incomingSms.mSmsMsg, smsOp);
+        }
+        int succeeded = 0;
+        try (ContentChangeSignal inboxSignal =
+                     new ContentChangeSignal(mContext.getContentResolver(), Telephony.Sms.CONTENT_URI)) {
+            final long deadline = SystemClock.elapsedRealtime() + INBOX_WRITE_TIMEOUT_MILLIS;
+            while (true) {
+                succeeded += operator.commit();
+                if (operator.getPendingCount() == 0) {
+                    break;
+                }
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0 || !inboxSignal.await(remaining)) {
+                    XLog.w("{} SMS not found in inbox", operator.getPendingCount());
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        XLog.i("{} {} of {} SMS succeed", smsOp == SmsInboxOperator.OP_DELETE ? "Delete" : "Mark as read",
+                succeeded, codeSmsList.size());
+        for (IncomingSms incomingSms : codeSmsList) {
+            StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_INBOX_OP, incomingSms.mReceivedAt);
+        }
+    }
+
+    private void recordSmsMsgList(final List<IncomingSms> codeSmsList, SmsCodeConfig config) {
+        List<SmsMsg> smsMsgList = new ArrayList<>();
+        for (IncomingSms incomingSms : codeSmsList) {
+            smsMsgList.add(incomingSms.mSmsMsg);
+        }
+        // insert and trim in one transaction on the DB writer,
+        // the stage is recorded on the writer as soon as it's committed
+        DbFuture<Void> future = DBManager.get(mContext).addSmsMsgListAsync(smsMsgList,
+                config.getMaxCodeRecordsCount(), config.getMaxCodeRecordsAgeMillis(), () -> {
+                    for (IncomingSms incomingSms : codeSmsList) {
+                        StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_RECORD_PERSISTED, incomingSms.mReceivedAt);
+                    }
+                });
+        try {
+            future.get();
+            XLog.d("Add SMS message records succeed");
+        } catch (ExecutionException e) {
+            XLog.e("Add SMS message record failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * App icon for the notifications, it's decoded only once.
+     */
+    synchronized Bitmap getAppIcon() {
+        if (mAppIcon == null) {
+            mAppIcon = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.ic_app_icon);
+        }
+        return mAppIcon;
+    }
+
+    private void showCodeNotification(IncomingSms incomingSms, SmsCodeConfig config) {
+        final SmsMsg smsMsg = incomingSms.mSmsMsg;
+        NotificationManager manager = (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager == null)
+            return;
+
+        String company = smsMsg.getCompany();
+        String smsCode = smsMsg.getSmsCode();
+        String title = TextUtils.isEmpty(company) ? smsMsg.getSender() : company;
+        String content = mContext.getString(R.string.code_notification_content, smsCode);
+
+        int notificationId = smsMsg.hashCode();
+
+        Intent copyCodeIntent = CopyCodeService.createCopyCodeIntent(mContext, smsCode, notificationId);
+        PendingIntent contentIntent = PendingIntent.getService(mContext,
+                notificationId,
+                copyCodeIntent,
+                getPendingIntentFlags());
+
+        Intent dismissedIntent = new Intent(ACTION_CODE_NOTIFICATION_DISMISSED);
+        dismissedIntent.setPackage(mContext.getPackageName());
+        dismissedIntent.putExtra(EXTRA_KEY_NOTIFICATION_ID, notificationId);
+        PendingIntent deleteIntent = PendingIntent.getBroadcast(mContext,
+                notificationId, dismissedIntent, getPendingIntentFlags());
+
+        Notification notification = new NotificationCompat.Builder(mContext, NotificationConst.CHANNEL_ID_SMSCODE_NOTIFICATION)
+                .setSmallIcon(R.drawable.ic_app_icon)
+                .setLargeIcon(getAppIcon())
+                .setWhen(System.currentTimeMillis())
+                .setContentTitle(title)
+                .setContentText(content)
+                .setContentIntent(contentIntent)
+                .setDeleteIntent(deleteIntent)
+                .setAutoCancel(true)
+                .setColor(ContextCompat.getColor(mContext, R.color.ic_launcher_background))
+                .setGroup(NotificationConst.GROUP_KEY_SMSCODE_NOTIFICATION)
+                .build();
+
+        manager.notify(notificationId, notification);
+        StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_NOTIFICATION, incomingSms.mReceivedAt);
+        mWorkerHandler.obtainMessage(MSG_CODE_NOTIFICATION_SHOWN, notificationId, 0).sendToTarget();
+
+        // 是否自动清除验证码通知
+        if (config.autoCancelCodeNotification()) {
+            int retentionTime = config.getNotificationRetentionTime() * 1000;
+            mWorkerHandler.obtainMessage(MSG_SCHEDULE_CANCEL_NOTIFICATION, notificationId, retentionTime)
+                    .sendToTarget();
+        }
+    }
+
+    /**
+     * The notification intents are never filled in by others,
+     * and they must declare the mutability since Android 12.
+     */
+    private static int getPendingIntentFlags() {
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        return flags;
+    }
+
+    /**
+     * Group summary of the code notifications of one batch.
+     * It stays until the last code notification in the group is gone.
+     */
+    private void showCodeSummaryNotification(List<IncomingSms> codeSmsList) {
+        NotificationManager manager = (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager == null)
+            return;
+        if (mShownCodeNotifications.size() == 0) {
+            // the children are all gone already
+            return;
+        }
+
+        String title = mContext.getString(R.string.code_notification_summary_title, codeSmsList.size());
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        for (IncomingSms incomingSms : codeSmsList) {
+            SmsMsg smsMsg = incomingSms.mSmsMsg;
+            String company = smsMsg.getCompany();
+            String from = TextUtils.isEmpty(company) ? smsMsg.getSender() : company;
+            style.addLine(from + ": " + smsMsg.getSmsCode());
+        }
+
+        final int summaryId = NotificationConst.NOTIFICATION_ID_SMSCODE_SUMMARY;
+        Intent recordsIntent = new Intent(mContext, CodeRecordsActivity.class);
+        recordsIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        PendingIntent contentIntent = PendingIntent.getActivity(mContext,
+                summaryId, recordsIntent, getPendingIntentFlags());
+
+        Intent dismissedIntent = new Intent(ACTION_CODE_NOTIFICATION_DISMISSED);
+        dismissedIntent.setPackage(mContext.getPackageName());
+        dismissedIntent.putExtra(EXTRA_KEY_NOTIFICATION_ID, summaryId);
+        PendingIntent deleteIntent = PendingIntent.getBroadcast(mContext,
+                summaryId, dismissedIntent, getPendingIntentFlags());
+
+        Notification notification = new NotificationCompat.Builder(mContext, NotificationConst.CHANNEL_ID_SMSCODE_NOTIFICATION)
+                .setSmallIcon(R.drawable.ic_app_icon)
+                .setLargeIcon(getAppIcon())
+                .setWhen(System.currentTimeMillis())
+                .setContentTitle(title)
+                .setStyle(style)
+                .setContentIntent(contentIntent)
+                .setDeleteIntent(deleteIntent)
+                // cancelling the summary cancels the whole group, it's left to the children
+                .setAutoCancel(false)
+                .setColor(ContextCompat.getColor(mContext, R.color.ic_launcher_background))
+                .setGroup(NotificationConst.GROUP_KEY_SMSCODE_NOTIFICATION)
+                .setGroupSummary(true)
+                .build();
+
+        manager.notify(summaryId, notification);
+        mCodeSummaryShown = true;
+    }
+
+    private void onCodeNotificationShown(int notificationId) {
+        // the dismissed broadcasts are needed to know when the group is empty
+        if (mCommandReceiver == null) {
+            mCommandReceiver = new CommandReceiver();
+            mCommandReceiver.register(mContext);
+        }
+        mShownCodeNotifications.put(notificationId, true);
+    }
+
+    /**
+     * The code notification is cancelled or dismissed, the summary goes with the last one in the group.
+     */
+    private void onCodeNotificationGone(int notificationId) {
+        mShownCodeNotifications.delete(notificationId);
+        if (mCodeSummaryShown && mShownCodeNotifications.size() == 0) {
+            mCodeSummaryShown = false;
+            cancelNotification(NotificationConst.NOTIFICATION_ID_SMSCODE_SUMMARY);
+        }
+    }
+
+    private void scheduleCancelNotification(int notificationId, int retentionTime) {
+        if (mPendingCancelTokens.get(notificationId) != null) {
+            // the same notification is shown again, restart its timer
+            stopCancelTimer(notificationId);
+        }
+        Integer token = notificationId;
+        mPendingCancelTokens.put(notificationId, token);
+        Message cancelNotifyMsg = mWorkerHandler.obtainMessage(MSG_CANCEL_NOTIFICATION, token);
+        sendLongWorkMessage(cancelNotifyMsg, retentionTime);
+    }
+
+    private void onNotificationDismissed(int notificationId) {
+        if (notificationId == NotificationConst.NOTIFICATION_ID_SMSCODE_SUMMARY) {
+            // the whole group is dismissed with the summary, the children stop their own timers
+            mCodeSummaryShown = false;
+            mShownCodeNotifications.clear();
+            return;
+        }
+        stopCancelTimer(notificationId);
+        onCodeNotificationGone(notificationId);
+    }
+
+    private void stopCancelTimer(int notificationId) {
+        Integer token = mPendingCancelTokens.get(notificationId);
+        if (token != null) {
+            mPendingCancelTokens.remove(notificationId);
+            mWorkerHandler.removeMessages(MSG_CANCEL_NOTIFICATION, token);
+            endLongWork();
+        }
+    }
+
+    private void cancelNotification(int notificationId) {
+        NotificationManager manager = (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager == null) {
+            return;
+        }
+        manager.cancel(notificationId);
+    }
+
+    private class CommandReceiver extends BroadcastReceiver {
+
+        void register(Context context) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(ACTION_CODE_NOTIFICATION_DISMISSED);
+            context.registerReceiver(this, filter);
+        }
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final String action = intent.getAction();
+            XLog.d("CommandReceiver received: {}", action);
+            if (ACTION_CODE_NOTIFICATION_DISMISSED.equals(action)) {
+                onCodeNotificationDismissed(intent.getIntExtra(EXTRA_KEY_NOTIFICATION_ID, 0));
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.tianma8023.smscode.service;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.Telephony;
+import android.text.TextUtils;
+
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.IntDef;
+
+/**
+ * 批量处理收件箱中的验证码短信 (delete or mark as read).<br>
+ * The requests are queued, the inbox rows of all of them are found by one query filtered by
+ * address and date, and the operations are committed by one {@link ContentResolver#applyBatch}.
+ * Not thread-safe.
+ */
+final class SmsInboxOperator {
+
+    static final int OP_DELETE = 0;
+    static final int OP_MARK_AS_READ = 1;
+
+    @IntDef({OP_DELETE, OP_MARK_AS_READ})
+    @interface SmsOp {
+    }
+
+    // the inbox date may be a little earlier than the date the SMS is received by us
+    private static final long DATE_TOLERANCE_MILLIS = 60 * 1000;
+
+    private static final class Request {
+        final SmsMsg mSmsMsg;
+        @SmsOp
+        final int mOp;
+
+        Request(SmsMsg smsMsg, @SmsOp int op) {
+            mSmsMsg = smsMsg;
+            mOp = op;
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final List<Request> mRequests = new ArrayList<>();
+
+    SmsInboxOperator(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    void enqueue(SmsMsg smsMsg, @SmsOp int op) {
+        mRequests.add(new Request(smsMsg, op));
+    }
+
+    /**
+     * Count of the requests whose SMS are not found in the inbox yet.
+     */
+    int getPendingCount() {
+        return mRequests.size();
+    }
+
+    /**
+     * Apply the requests whose SMS are in the inbox now, the others stay queued.
+     *
+     * @return count of the succeeded operations
+     */
+    int commit() {
+        if (mRequests.isEmpty()) {
+            return 0;
+        }
+        try {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            List<Request> resolved = new ArrayList<>();
+            findInboxRows(operations, resolved);
+            if (operations.isEmpty()) {
+                return 0;
+            }
+            mRequests.removeAll(resolved);
+
+            ContentProviderResult[] results =
+                    mResolver.applyBatch(Telephony.Sms.CONTENT_URI.getAuthority(), operations);
+            int succeeded = 0;
+            for (ContentProviderResult result : results) {
+                if (result.count != null && result.count > 0) {
+                    succeeded++;
+                }
+            }
+            return succeeded;
+        } catch (Exception e) {
+            // not worth retrying
+            XLog.e("Operate sms failed: ", e);
+            mRequests.clear();
+            return 0;
+        }
+    }
+
+    private void findInboxRows(List<ContentProviderOperation> operations, List<Request> resolved) {
+        List<String> addresses = new ArrayList<>();
+        long minDate = Long.MAX_VALUE;
+        for (Request request : mRequests) {
+            if (!addresses.contains(request.mSmsMsg.getSender())) {
+                addresses.add(request.mSmsMsg.getSender());
+            }
+            minDate = Math.min(minDate, request.mSmsMsg.getDate());
+        }
+
+        String[] projection = new String[]{
+                Telephony.Sms._ID,
+                Telephony.Sms.ADDRESS,
+                Telephony.Sms.BODY,
+        };
+        StringBuilder selection = new StringBuilder(Telephony.Sms.ADDRESS).append(" IN (");
+        List<String> selectionArgs = new ArrayList<>(addresses);
+        for (int i = 0; i < addresses.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(") AND ").append(Telephony.Sms.DATE).append(" >= ?")
+                .append(" AND ").append(Telephony.Sms.READ).append(" = 0");
+        selectionArgs.add(String.valueOf(minDate - DATE_TOLERANCE_MILLIS));
+        String sortOrder = Telephony.Sms.DATE + " desc";
+
+        Set<Long> usedIds = new HashSet<>();
+        try (Cursor cursor = mResolver.query(Telephony.Sms.CONTENT_URI, projection,
+                selection.toString(), selectionArgs.toArray(new String[0]), sortOrder)) {
+            if (cursor == null) {
+                return;
+            }
+            final int idIndex = cursor.getColumnIndex(Telephony.Sms._ID);
+            final int addressIndex = cursor.getColumnIndex(Telephony.Sms.ADDRESS);
+            final int bodyIndex = cursor.getColumnIndex(Telephony.Sms.BODY);
+            while (cursor.moveToNext() && resolved.size() < mRequests.size()) {
+                long id = cursor.getLong(idIndex);
+                String address = cursor.getString(addressIndex);
+                String body = cursor.getString(bodyIndex);
+                Iterator<Request> it = mRequests.iterator();
+                while (it.hasNext()) {
+                    Request request = it.next();
+                    if (resolved.contains(request) || usedIds.contains(id)) {
+                        continue;
+                    }
+                    SmsMsg smsMsg = request.mSmsMsg;
+                    if (TextUtils.equals(address, smsMsg.getSender())
+                            && body != null && body.startsWith(smsMsg.getBody())) {
+                        operations.add(newOperation(id, request.mOp));
+                        resolved.add(request);
+                        usedIds.add(id);
+                    }
+                }
+            }
+        }
+    }
+
+    private static ContentProviderOperation newOperation(long id, @SmsOp int op) {
+        String where = Telephony.Sms._ID + " = ?";
+        String[] selectionArgs = new String[]{String.valueOf(id)};
+        if (op == OP_DELETE) {
+            return ContentProviderOperation.newDelete(Telephony.Sms.CONTENT_URI)
+                    .withSelection(where, selectionArgs)
+                    .build();
+        } else {
+            return ContentProviderOperation.newUpdate(Telephony.Sms.CONTENT_URI)
+                    .withSelection(where, selectionArgs)
+                    .withValue(Telephony.Sms.READ, 1)
+                    .build();
+        }
+    }
+}
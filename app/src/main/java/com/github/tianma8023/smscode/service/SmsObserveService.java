@@ -4,15 +4,17 @@ import android.Manifest;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
 import android.provider.Telephony;
 
 import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.receiver.SmsMsgReceiver;
 import com.github.tianma8023.smscode.utils.SPUtils;
 import com.github.tianma8023.smscode.utils.XLog;
 
@@ -21,22 +23,44 @@ import androidx.core.content.ContextCompat;
 import ch.qos.logback.classic.Level;
 
 /**
- * 观察监测短信的Service
+ * 观察监测短信的Service<br>
+ * The observer runs on a background looper, bursts of changes are debounced into one query.
+ * New inbox rows are found by the _ID watermark, which is persisted so that the messages
+ * are neither missed nor handled twice across restarts of this process.
  */
 public class SmsObserveService extends Service {
 
+    // 只在本进程使用, 不与设置共用, 避免多进程写入时互相覆盖
+    private static final String OBSERVE_PREF_NAME = "sms_observe";
+    private static final String KEY_LAST_SEEN_ID = "last_seen_id";
+
+    // onChange() is called several times for one message
+    private static final long DEBOUNCE_MILLIS = 100;
+    // max rows handled in one query
+    private static final int QUERY_BATCH_SIZE = 16;
+    // restored or imported messages aren't new messages
+    private static final long STALE_SMS_MILLIS = 5 * 60 * 1000;
+
+    private HandlerThread mObserveThread;
+    private Handler mObserveHandler;
     private SmsObserver mSmsObserver;
 
-    private int lastId = 0;
+    // only accessed on the observe thread
+    private long mLastSeenId = -1;
 
     private boolean mCurIsVerboseLog;
 
     private static final String EXTRA_KEY_VERBOSE_LOG = "extra_key_verbose_log";
 
+    private final Runnable mParseNewSmsTask = this::parseNewSms;
+
     @Override
     public void onCreate() {
         super.onCreate();
         mCurIsVerboseLog = SPUtils.isVerboseLogMode(this);
+        mObserveThread = new HandlerThread("SmsObserver");
+        mObserveThread.start();
+        mObserveHandler = new Handler(mObserveThread.getLooper());
     }
 
     @Nullable
@@ -68,17 +92,21 @@ public class SmsObserveService extends Service {
     public void onDestroy() {
         super.onDestroy();
         unregisterObserver();
+        mObserveThread.quitSafely();
     }
 
     private void registerObserver() {
+        if (mSmsObserver != null) {
+            return;
+        }
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECEIVE_SMS)
                 == PackageManager.PERMISSION_GRANTED) {
-            if (mSmsObserver == null) {
-                mSmsObserver = new SmsObserver(new Handler(Looper.getMainLooper()));
-            }
+            mSmsObserver = new SmsObserver(mObserveHandler);
             // register SMS content observer
             getContentResolver().registerContentObserver(Telephony.Sms.CONTENT_URI,
                     true, mSmsObserver);
+            // messages arrived while this process was dead
+            mObserveHandler.post(mParseNewSmsTask);
         } else {
             XLog.d("RECEIVE_SMS permission denied");
         }
@@ -91,6 +119,8 @@ public class SmsObserveService extends Service {
 
         // unregister content observer
         getContentResolver().unregisterContentObserver(mSmsObserver);
+        mSmsObserver = null;
+        mObserveHandler.removeCallbacks(mParseNewSmsTask);
     }
 
     private class SmsObserver extends ContentObserver {
@@ -102,51 +132,99 @@ public class SmsObserveService extends Service {
         @Override
         public void onChange(boolean selfChange) {
             XLog.d("SmsObserver#onChange()");
-            parseNewSms();
+            mObserveHandler.removeCallbacks(mParseNewSmsTask);
+            mObserveHandler.postDelayed(mParseNewSmsTask, DEBOUNCE_MILLIS);
         }
     }
 
+    private SharedPreferences getObservePreferences() {
+        return getSharedPreferences(OBSERVE_PREF_NAME, Context.MODE_PRIVATE);
+    }
+
     private void parseNewSms() {
+        try {
+            if (mLastSeenId < 0) {
+                mLastSeenId = getObservePreferences().getLong(KEY_LAST_SEEN_ID, -1);
+            }
+            long maxId = queryMaxInboxId();
+            if (mLastSeenId < 0 || maxId < mLastSeenId) {
+                // first run, or the newest messages are deleted (ids may be reused):
+                // only the messages after now are new
+                saveLastSeenId(maxId);
+                return;
+            }
+            int count;
+            do {
+                count = parseSmsAfter(mLastSeenId);
+            } while (count == QUERY_BATCH_SIZE);
+        } catch (Exception e) {
+            XLog.e("Parse new SMS failed", e);
+        }
+    }
+
+    private long queryMaxInboxId() {
+        final String[] projection = new String[]{Telephony.Sms._ID};
+        final String sortOrder = Telephony.Sms._ID + " desc limit 1";
+        try (Cursor cursor = getContentResolver().query(Telephony.Sms.Inbox.CONTENT_URI, projection,
+                null, null, sortOrder)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Handle the inbox rows whose _ID is greater than the watermark, in order.
+     *
+     * @return count of the rows queried
+     */
+    private int parseSmsAfter(long lastSeenId) {
         final String[] projection = new String[]{
                 Telephony.Sms._ID,
                 Telephony.Sms.ADDRESS,
                 Telephony.Sms.BODY,
                 Telephony.Sms.DATE
         };
-        // 考虑到不止新增短信能触发Sms ContentObserver的onChange()，比如删除短信也能触发
-        // 所以需要时间判断, 10s之内的是新短信
-        final String selection = Telephony.Sms.DATE + " > ?";
-        final String[] selectionArgs = new String[]{
-                "" + (System.currentTimeMillis() - 10000),
-        };
-        final String sortOrder = Telephony.Sms.DATE + " desc limit 1";
-        Cursor cursor = getContentResolver().query(Telephony.Sms.Inbox.CONTENT_URI, projection,
-                selection, selectionArgs, sortOrder);
-        if (cursor == null) {
-            return;
-        }
-        if(cursor.moveToFirst()) {
-            int id = cursor.getInt(cursor.getColumnIndex(Telephony.Sms._ID));
-            if (id != lastId) { // same with the last id
-                lastId = id;
-
-                String sender = cursor.getString(cursor.getColumnIndex(Telephony.Sms.ADDRESS));
-                String body = cursor.getString(cursor.getColumnIndex(Telephony.Sms.BODY));
-                long date = cursor.getLong(cursor.getColumnIndex(Telephony.Sms.DATE));
-
-                SmsMsg smsMsg = new SmsMsg();
-                smsMsg.setSender(sender);
-                smsMsg.setBody(body);
-                smsMsg.setDate(date);
-
-                Intent smsCodeHandleSvc = new Intent(this, SmsCodeHandleService.class);
-                smsCodeHandleSvc.putExtra(SmsCodeHandleService.EXTRA_KEY_SMS_MESSAGE_DATA, smsMsg);
-                ContextCompat.startForegroundService(this, smsCodeHandleSvc);
+        final String selection = Telephony.Sms._ID + " > ?";
+        final String[] selectionArgs = new String[]{String.valueOf(lastSeenId)};
+        final String sortOrder = Telephony.Sms._ID + " asc limit " + QUERY_BATCH_SIZE;
+        int count = 0;
+        try (Cursor cursor = getContentResolver().query(Telephony.Sms.Inbox.CONTENT_URI, projection,
+                selection, selectionArgs, sortOrder)) {
+            if (cursor == null) {
+                return 0;
+            }
+            final int idIndex = cursor.getColumnIndex(Telephony.Sms._ID);
+            final int addressIndex = cursor.getColumnIndex(Telephony.Sms.ADDRESS);
+            final int bodyIndex = cursor.getColumnIndex(Telephony.Sms.BODY);
+            final int dateIndex = cursor.getColumnIndex(Telephony.Sms.DATE);
+            final long staleBefore = System.currentTimeMillis() - STALE_SMS_MILLIS;
+            while (cursor.moveToNext()) {
+                count++;
+                long id = cursor.getLong(idIndex);
+                long date = cursor.getLong(dateIndex);
+                if (date > staleBefore) {
+                    SmsMsg smsMsg = new SmsMsg();
+                    smsMsg.setSender(cursor.getString(addressIndex));
+                    smsMsg.setBody(cursor.getString(bodyIndex));
+                    smsMsg.setDate(date);
+
+                    // SmsCodeDispatcher lives in main process
+                    SmsMsgReceiver.sendSmsMsg(this, smsMsg);
+                }
+                mLastSeenId = Math.max(mLastSeenId, id);
             }
         }
-        if (!cursor.isClosed()) {
-            cursor.close();
+        if (count > 0) {
+            saveLastSeenId(mLastSeenId);
         }
+        return count;
+    }
+
+    private void saveLastSeenId(long lastSeenId) {
+        mLastSeenId = lastSeenId;
+        getObservePreferences().edit().putLong(KEY_LAST_SEEN_ID, lastSeenId).apply();
     }
 
     public static void startMe(Context context, boolean isVerboseLog) {
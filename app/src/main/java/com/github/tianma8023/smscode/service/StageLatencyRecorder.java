@@ -0,0 +1,158 @@
+package com.github.tianma8023.smscode.service;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.IntDef;
+
+/**
+ * 验证码处理各阶段的耗时记录.<br>
+ * Every sample is the latency from the time the SMS is received to the time a stage is reached.
+ * Samples are packed into longs and kept in a fixed-size lock-free ring, so recording a sample
+ * doesn't allocate. The samples live in memory of the current process only.
+ */
+public final class StageLatencyRecorder {
+
+    public static final int STAGE_RECEIVE = 0;
+    public static final int STAGE_DEDUP = 1;
+    public static final int STAGE_PARSE = 2;
+    public static final int STAGE_CLIPBOARD = 3;
+    public static final int STAGE_TOAST = 4;
+    public static final int STAGE_NOTIFICATION = 5;
+    public static final int STAGE_AUTO_INPUT_BROADCAST = 6;
+    public static final int STAGE_NODE_FOUND = 7;
+    public static final int STAGE_TEXT_SET = 8;
+    public static final int STAGE_RECORD_PERSISTED = 9;
+    public static final int STAGE_INBOX_OP = 10;
+
+    public static final int STAGE_COUNT = 11;
+
+    @IntDef({STAGE_RECEIVE, STAGE_DEDUP, STAGE_PARSE, STAGE_CLIPBOARD, STAGE_TOAST,
+            STAGE_NOTIFICATION, STAGE_AUTO_INPUT_BROADCAST, STAGE_NODE_FOUND, STAGE_TEXT_SET,
+            STAGE_RECORD_PERSISTED, STAGE_INBOX_OP})
+    public @interface Stage {
+    }
+
+    private static final String[] STAGE_NAMES = {
+            "receive",
+            "dedup",
+            "parse",
+            "clipboard",
+            "toast",
+            "notification",
+            "auto_input_broadcast",
+            "node_found",
+            "text_set",
+            "record_persisted",
+            "inbox_op",
+    };
+
+    // must be a power of 2
+    private static final int CAPACITY = 1024;
+    private static final int STAGE_SHIFT = 56;
+    private static final long LATENCY_MASK = (1L << STAGE_SHIFT) - 1;
+    private static final long EMPTY = 0L;
+
+    private static final StageLatencyRecorder sInstance = new StageLatencyRecorder();
+
+    // (stage + 1) << 56 | latency in microseconds, 0 means empty slot
+    private final AtomicLongArray mSamples = new AtomicLongArray(CAPACITY);
+    private final AtomicInteger mCursor = new AtomicInteger(0);
+
+    private StageLatencyRecorder() {
+    }
+
+    public static StageLatencyRecorder get() {
+        return sInstance;
+    }
+
+    /**
+     * Timestamp of receiving, the base of the latencies.
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static String getStageName(@Stage int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * Record that the stage is reached now.
+     *
+     * @param receivedAt timestamp returned by {@link #now()} when the SMS is received
+     */
+    public void record(@Stage int stage, long receivedAt) {
+        if (receivedAt <= 0) {
+            return;
+        }
+        long latencyMicros = Math.max(0, (now() - receivedAt) / 1000);
+        long sample = ((long) (stage + 1) << STAGE_SHIFT) | (latencyMicros & LATENCY_MASK);
+        mSamples.set(mCursor.getAndIncrement() & (CAPACITY - 1), sample);
+    }
+
+    /**
+     * Copy the samples, oldest first.
+     *
+     * @return pairs of {stage, latency in microseconds}
+     */
+    public long[][] snapshot() {
+        long[][] samples = new long[CAPACITY][];
+        int count = 0;
+        int start = mCursor.get();
+        for (int i = 0; i < CAPACITY; i++) {
+            long sample = mSamples.get((start + i) & (CAPACITY - 1));
+            if (sample != EMPTY) {
+                samples[count++] = new long[]{(sample >>> STAGE_SHIFT) - 1, sample & LATENCY_MASK};
+            }
+        }
+        return Arrays.copyOf(samples, count);
+    }
+
+    /**
+     * Sorted latencies in microseconds of every stage.
+     */
+    public long[][] latenciesByStage() {
+        long[][] samples = snapshot();
+        int[] counts = new int[STAGE_COUNT];
+        for (long[] sample : samples) {
+            counts[(int) sample[0]]++;
+        }
+        long[][] latencies = new long[STAGE_COUNT][];
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            latencies[stage] = new long[counts[stage]];
+            counts[stage] = 0;
+        }
+        for (long[] sample : samples) {
+            int stage = (int) sample[0];
+            latencies[stage][counts[stage]++] = sample[1];
+        }
+        for (long[] stageLatencies : latencies) {
+            Arrays.sort(stageLatencies);
+        }
+        return latencies;
+    }
+
+    /**
+     * Nearest-rank percentile of the sorted latencies.
+     *
+     * @param percent 0 ~ 100
+     * @return -1 if there is no latency
+     */
+    public static long percentile(long[] sortedLatencies, int percent) {
+        if (sortedLatencies.length == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sortedLatencies.length);
+        return sortedLatencies[Math.max(rank, 1) - 1];
+    }
+
+    public void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            mSamples.set(i, EMPTY);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
@@ -16,10 +17,11 @@ import android.widget.Toast;
 import com.github.tianma8023.smscode.BuildConfig;
 import com.github.tianma8023.smscode.R;
 import com.github.tianma8023.smscode.constant.PrefConst;
+import com.github.tianma8023.smscode.service.StageLatencyRecorder;
 import com.github.tianma8023.smscode.utils.AccessibilityUtils;
 import com.github.tianma8023.smscode.utils.ClipboardUtils;
-import com.github.tianma8023.smscode.utils.SPUtils;
 import com.github.tianma8023.smscode.utils.ShellUtils;
+import com.github.tianma8023.smscode.utils.SmsCodeConfig;
 import com.github.tianma8023.smscode.utils.SmsCodeUtils;
 import com.github.tianma8023.smscode.utils.XLog;
 
@@ -27,6 +29,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.RequiresApi;
@@ -40,11 +43,28 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
     public static final String ACTION_STOP_AUTO_INPUT = BuildConfig.APPLICATION_ID + "action.STOP_AUTO_INPUT";
 
     public static final String EXTRA_KEY_SMS_CODE = "extra_key_sms_code";
+    // see StageLatencyRecorder#now()
+    public static final String EXTRA_KEY_RECEIVED_AT = "extra_key_received_at";
 
     private static final int AUTO_INPUT_MAX_TRY_TIMES = 3;
+    // max time waiting for the window to change before the next try
+    private static final long AUTO_INPUT_RETRY_TIMEOUT_MILLIS = 300;
+
+    private static final Object sConnectionLock = new Object();
+    private static boolean sConnected;
+
+    // released when the window or its content changes
+    private final Semaphore mWindowChanges = new Semaphore(0);
+    // released when an editable view gets focused or clicked
+    private final Semaphore mFocusChanges = new Semaphore(0);
+    // whether the manual focus mode is waiting for an editable view
+    private volatile boolean mAwaitingManualFocus;
 
     private Handler mInnerHandler;
 
+    // receive time of the SMS being auto input now
+    private volatile long mReceivedAt;
+
     private class AutoInputControllerReceiver extends BroadcastReceiver {
 
         @Override
@@ -53,9 +73,10 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
             XLog.d("AutoInputReceiver received: {}", action);
             if (ACTION_START_AUTO_INPUT.equals(action)) {
                 String smsCode = intent.getStringExtra(EXTRA_KEY_SMS_CODE);
+                long receivedAt = intent.getLongExtra(EXTRA_KEY_RECEIVED_AT, 0);
 //                autoInputSmsCode(smsCode);
                 ExecutorService threadPool = Executors.newSingleThreadExecutor();
-                threadPool.execute(new AutoInputTask(smsCode));
+                threadPool.execute(new AutoInputTask(smsCode, receivedAt, SmsCodeConfig.get(context)));
             } else if (ACTION_STOP_AUTO_INPUT.equals(action)) {
                 String accessSvcName = AccessibilityUtils.getServiceName(SmsCodeAutoInputService.class);
                 // 用root的方式关闭无障碍服务
@@ -71,6 +92,38 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
     protected void onServiceConnected() {
         super.onServiceConnected();
         init();
+        setConnected(true);
+    }
+
+    private static void setConnected(boolean connected) {
+        synchronized (sConnectionLock) {
+            sConnected = connected;
+            sConnectionLock.notifyAll();
+        }
+    }
+
+    /**
+     * Wait until the service is connected and ready to receive the auto input broadcast.
+     *
+     * @return true if connected, false if timeout
+     */
+    public static boolean waitForConnected(long timeoutMillis) {
+        final long deadline = SystemClock.elapsedRealtime() + timeoutMillis;
+        synchronized (sConnectionLock) {
+            while (!sConnected) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    sConnectionLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     private void init() {
@@ -89,29 +142,79 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+                mWindowChanges.release();
+                break;
+            case AccessibilityEvent.TYPE_VIEW_FOCUSED:
+            case AccessibilityEvent.TYPE_VIEW_CLICKED:
+                mWindowChanges.release();
+                // querying the nodes costs binder calls, only do it when someone is waiting
+                if (mAwaitingManualFocus && isEditableSource(event)) {
+                    mFocusChanges.release();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Whether the event is from an editable view, the input focus on it is what the manual focus mode waits for.
+     */
+    private boolean isEditableSource(AccessibilityEvent event) {
+        AccessibilityNodeInfo source = event.getSource();
+        if (source != null) {
+            boolean editable = source.isEditable();
+            source.recycle();
+            if (editable) {
+                return true;
+            }
+        }
+        AccessibilityNodeInfo focusedNodeInfo = findFocusNodeInfo();
+        if (focusedNodeInfo != null) {
+            boolean editable = focusedNodeInfo.isEditable();
+            focusedNodeInfo.recycle();
+            return editable;
+        }
+        return false;
+    }
+
+    /**
+     * Wait for the signal, the signals released before the call count.
+     *
+     * @return true if signaled, false if timeout
+     */
+    private boolean awaitSignal(Semaphore signal, long timeoutMillis) {
+        try {
+            boolean signaled = timeoutMillis > 0 && signal.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            signal.drainPermits();
+            return signaled;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     @Override
     public void onDestroy() {
+        setConnected(false);
         if (mControllerReceiver != null) {
             unregisterReceiver(mControllerReceiver);
         }
         super.onDestroy();
     }
 
-    private void autoInputSmsCode(String smsCode) {
-        boolean success = tryToAutoInputSMSCode(smsCode);
+    private void autoInputSmsCode(String smsCode, SmsCodeConfig config) {
+        boolean success = tryToAutoInputSMSCode(smsCode, config);
 
         if (success) {
             XLog.i("Auto input succeed");
-            if (SPUtils.copyToClipboardEnabled(this)
-                    && SPUtils.shouldClearClipboard(this)) {
+            if (config.copyToClipboardEnabled() && config.shouldClearClipboard()) {
                 ClipboardUtils.clearClipboard(this);
             }
         }
 
-        String autoInputMode = SPUtils.getAutoInputMode(this);
-        if (PrefConst.AUTO_INPUT_MODE_ROOT.equals(autoInputMode)) {
+        if (PrefConst.AUTO_INPUT_MODE_ROOT.equals(config.getAutoInputMode())) {
             Intent stopAutoInput = new Intent();
             stopAutoInput.setAction(ACTION_STOP_AUTO_INPUT);
             sendBroadcast(stopAutoInput);
@@ -121,41 +224,57 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
     /**
      * 尝试自动输入短信验证码
      * @param smsCode SMS code
+     * @param config settings snapshot
      * @return 成功输入则返回true，否则返回false
      */
-    private boolean tryToAutoInputSMSCode(String smsCode) {
+    private boolean tryToAutoInputSMSCode(String smsCode, SmsCodeConfig config) {
         boolean success = false;
-        String focusMode = SPUtils.getFocusMode(this);
+        String focusMode = config.getFocusMode();
         boolean isRootAutoInputMode =
-                PrefConst.AUTO_INPUT_MODE_ROOT.equals(SPUtils.getAutoInputMode(this));
+                PrefConst.AUTO_INPUT_MODE_ROOT.equals(config.getAutoInputMode());
         if (PrefConst.FOCUS_MODE_AUTO.equals(focusMode)) {
             // focus mode: auto focus
             for (int i = 0; i < AUTO_INPUT_MAX_TRY_TIMES; i++) {
+                mWindowChanges.drainPermits();
                 success = tryToAutoInputByAutoFocus(smsCode);
-                if (success) {
+                if (success || i == AUTO_INPUT_MAX_TRY_TIMES - 1) {
                     break;
                 }
-                sleep(100);
+                // try again once the window changes
+                awaitSignal(mWindowChanges, AUTO_INPUT_RETRY_TIMEOUT_MILLIS);
             }
 
-            if (!success && SPUtils.manualFocusIfFailedEnabled(this)) {
+            if (!success && config.manualFocusIfFailedEnabled()) {
                 XLog.d("Auto focus failed, transfer to manual focus");
                 final int secs = 3;
+                mFocusChanges.drainPermits();
+                mAwaitingManualFocus = true;
                 mInnerHandler.post(() -> {
                     String text = getString(R.string.auto_focus_failed_prompt, secs);
                     Toast.makeText(SmsCodeAutoInputService.this, text, Toast.LENGTH_LONG).show();
                 });
-                sleep(secs * 1000);
-                success = tryToAutoInputByManualFocus(smsCode, isRootAutoInputMode);
+                // input as soon as user focuses an EditText, or try the current focus when timeout
+                final long deadline = SystemClock.elapsedRealtime() + secs * 1000;
+                boolean focusChanged;
+                try {
+                    do {
+                        focusChanged = awaitSignal(mFocusChanges, deadline - SystemClock.elapsedRealtime());
+                        success = tryToAutoInputByManualFocus(smsCode, isRootAutoInputMode);
+                    } while (!success && focusChanged);
+                } finally {
+                    mAwaitingManualFocus = false;
+                }
             }
         } else {
             // focus mode: manual focus
             for (int i = 0; i < AUTO_INPUT_MAX_TRY_TIMES; i++) {
+                mWindowChanges.drainPermits();
                 success = tryToAutoInputByManualFocus(smsCode, isRootAutoInputMode);
-                if (success) {
+                if (success || i == AUTO_INPUT_MAX_TRY_TIMES - 1) {
                     break;
                 }
-                sleep(100);
+                // try again once the window changes
+                awaitSignal(mWindowChanges, AUTO_INPUT_RETRY_TIMEOUT_MILLIS);
             }
         }
         return success;
@@ -168,14 +287,22 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
      */
     private boolean tryToAutoInputByManualFocus(String smsCode, boolean isRootAutoInputMode) {
         if (isRootAutoInputMode){
-            return ShellUtils.inputText(smsCode);
+            boolean success = ShellUtils.inputText(smsCode);
+            if (success) {
+                StageLatencyRecorder.get().record(StageLatencyRecorder.STAGE_TEXT_SET, mReceivedAt);
+            }
+            return success;
         } else {
             AccessibilityNodeInfo focusedNodeInfo = findFocusNodeInfo();
-            if (focusedNodeInfo != null && focusedNodeInfo.isEditable()) {
-                inputText(focusedNodeInfo, smsCode);
-                return true;
+            if (focusedNodeInfo == null) {
+                return false;
             }
-            return false;
+            boolean editable = focusedNodeInfo.isEditable();
+            if (editable) {
+                inputSmsCode(focusedNodeInfo, smsCode);
+            }
+            focusedNodeInfo.recycle();
+            return editable;
         }
     }
 
@@ -192,7 +319,9 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
                 XLog.d("rootNodeInfo is null");
                 return null;
             }
-            return rootNodeInfo.findFocus(AccessibilityNodeInfo.FOCUS_INPUT);
+            AccessibilityNodeInfo focusedNodeInfo = rootNodeInfo.findFocus(AccessibilityNodeInfo.FOCUS_INPUT);
+            rootNodeInfo.recycle();
+            return focusedNodeInfo;
         }
     }
 
@@ -237,7 +366,7 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
                 boolean flag = SmsCodeUtils.containsCodeKeywords(getApplicationContext(), hint);
                 if (flag) {
                     // 模拟输入
-                    inputText(nodeInfo, smsCode);
+                    inputSmsCode(nodeInfo, smsCode);
                     XLog.d("SMS code EditText found!");
                     return true;
                 }
@@ -257,7 +386,7 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
                 boolean flag = SmsCodeUtils.containsCodeKeywords(getApplicationContext(), hintOrText);
                 if (flag) {
                     // 模拟输入
-                    inputText(nodeInfo, smsCode);
+                    inputSmsCode(nodeInfo, smsCode);
                     XLog.d("SMS code EditText found!");
                     return true;
                 }
@@ -267,7 +396,7 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
         if (editTextNodes.size() == 1) { // 只有一个EditText节点
             XLog.d("Have 1 EditText node");
             AccessibilityNodeInfo smsCodeNode = editTextNodes.get(0);
-            inputText(smsCodeNode, smsCode);
+            inputSmsCode(smsCodeNode, smsCode);
             return true;
         } else if (editTextNodes.size() == 2) { // 有两个EditText (一个是电话号码,一个是验证码输入框)
             XLog.d("Have 2 EditText nodes");
@@ -276,14 +405,14 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
             CharSequence pnHintSequence = phoneNumberNode.getHintText();
             if (!TextUtils.isEmpty(pnHintSequence)) {
                 if (SmsCodeUtils.containsPhoneNumberKeywords(pnHintSequence.toString())) {
-                    inputText(smsCodeNode, smsCode);
+                    inputSmsCode(smsCodeNode, smsCode);
                     return true;
                 }
             }
             CharSequence pnTextSequence = phoneNumberNode.getText();
             if (!TextUtils.isEmpty(pnTextSequence)) {
                 if (SmsCodeUtils.isPossiblePhoneNumber(pnTextSequence.toString())) {
-                    inputText(smsCodeNode, smsCode);
+                    inputSmsCode(smsCodeNode, smsCode);
                     return true;
                 }
             }
@@ -304,7 +433,7 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
                 boolean flag = SmsCodeUtils.containsCodeKeywords(getApplicationContext(), hintOrText);
                 if (flag) {
                     // 模拟输入
-                    inputText(nodeInfo, smsCode);
+                    inputSmsCode(nodeInfo, smsCode);
                     XLog.d("SMS code EditText found!");
                     return true;
                 }
@@ -314,7 +443,7 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
         if (editTextNodes.size() == 1) { // 只有一个EditText节点
             XLog.d("Have 1 EditText node");
             AccessibilityNodeInfo smsCodeNode = editTextNodes.get(0);
-            inputText(smsCodeNode, smsCode);
+            inputSmsCode(smsCodeNode, smsCode);
             return true;
         } else if (editTextNodes.size() == 2) { // 有两个EditText (一个是电话号码,一个是验证码输入框)
             XLog.d("Have 2 EditText nodes");
@@ -323,7 +452,7 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
             CharSequence pnTextSequence = phoneNumberNode.getText();
             if (!TextUtils.isEmpty(pnTextSequence)) {
                 if (SmsCodeUtils.isPossiblePhoneNumber(pnTextSequence.toString())) {
-                    inputText(smsCodeNode, smsCode);
+                    inputSmsCode(smsCodeNode, smsCode);
                     return true;
                 }
             }
@@ -372,26 +501,33 @@ public class SmsCodeAutoInputService extends BaseAccessibilityService {
         }
     }
 
-    private void sleep(int milliSeconds) {
-        try {
-            TimeUnit.MILLISECONDS.sleep(milliSeconds);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    /**
+     * 向验证码输入框输入验证码, and record the latencies of finding the node and setting the text.
+     */
+    private void inputSmsCode(AccessibilityNodeInfo nodeInfo, String smsCode) {
+        StageLatencyRecorder latencyRecorder = StageLatencyRecorder.get();
+        latencyRecorder.record(StageLatencyRecorder.STAGE_NODE_FOUND, mReceivedAt);
+        inputText(nodeInfo, smsCode);
+        latencyRecorder.record(StageLatencyRecorder.STAGE_TEXT_SET, mReceivedAt);
     }
 
     private class AutoInputTask implements Runnable {
 
         private String mSmsCode;
+        private long mReceivedAt;
+        private SmsCodeConfig mConfig;
 
-        AutoInputTask(String smsCode) {
+        AutoInputTask(String smsCode, long receivedAt, SmsCodeConfig config) {
             mSmsCode = smsCode;
+            mReceivedAt = receivedAt;
+            mConfig = config;
         }
 
         @Override
         public void run() {
+            SmsCodeAutoInputService.this.mReceivedAt = mReceivedAt;
             Looper.prepare();
-            autoInputSmsCode(mSmsCode);
+            autoInputSmsCode(mSmsCode, mConfig);
             Looper.loop();
         }
     }
@@ -19,6 +19,11 @@ public class PreferenceUtils {
                 Context.MODE_PRIVATE);
     }
 
+    public static void registerOnChangeListener(Context context,
+                                                SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        getPreferences(context).registerOnSharedPreferenceChangeListener(listener);
+    }
+
     public static boolean contains(Context context, String key) {
         return getPreferences(context).contains(key);
     }
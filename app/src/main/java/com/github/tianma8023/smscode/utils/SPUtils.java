@@ -15,8 +15,6 @@ public class SPUtils {
     private static final String FIRST_RUN_SINCE_V1 = "first_run_v1";
     // 是否已经对MIUI的"通知类短信"权限进行提示了
     private static final String SERVICE_SMS_PROMPT_SHOWN = "service_sms_prompt_shown";
-    private static final String LAST_SMS_DATE = "last_sms_date";
-    private static final String LAST_SMS_SENDER = "last_sms_sender";
     // 本地的版本号
     private static final String LOCAL_VERSION_CODE = "local_version_code";
 
@@ -54,34 +52,6 @@ public class SPUtils {
         PreferenceUtils.putBoolean(context, SERVICE_SMS_PROMPT_SHOWN, shown);
     }
 
-    /**
-     * 记录上次SMS的Sender
-     */
-    public static void setLastSmsSender(Context context, String lastSender) {
-        PreferenceUtils.putString(context, LAST_SMS_SENDER, lastSender);
-    }
-
-    /**
-     * 获取上次SMS的Sender
-     */
-    public static String getLastSmsSender(Context context) {
-        return PreferenceUtils.getString(context, LAST_SMS_SENDER, "");
-    }
-
-    /**
-     * 设置上次SMS的Date
-     */
-    public static void setLastSmsDate(Context context, long lastSendDate) {
-        PreferenceUtils.putLong(context, LAST_SMS_DATE, lastSendDate);
-    }
-
-    /**
-     * 获取上次SMS的Date
-     */
-    public static long getLastSmsDate(Context context) {
-        return PreferenceUtils.getLong(context, LAST_SMS_DATE, -1L);
-    }
-
     /**
      * 总开关是否打开
      */
@@ -249,6 +219,24 @@ public class SPUtils {
                 PrefConst.ENABLE_CODE_RECORDS, PrefConst.ENABLE_CODE_RECORDS_DEFAULT);
     }
 
+    /**
+     * 最多保留的验证码记录条数
+     */
+    public static int getMaxCodeRecordsCount(Context context) {
+        String value = PreferenceUtils.getString(context,
+                PrefConst.MAX_CODE_RECORDS_COUNT, PrefConst.MAX_CODE_RECORDS_COUNT_DEFAULT);
+        return Integer.valueOf(value);
+    }
+
+    /**
+     * 验证码记录最长保留天数，0表示不限
+     */
+    public static int getMaxCodeRecordsAge(Context context) {
+        String value = PreferenceUtils.getString(context,
+                PrefConst.MAX_CODE_RECORDS_AGE, PrefConst.MAX_CODE_RECORDS_AGE_DEFAULT);
+        return Integer.valueOf(value);
+    }
+
     /**
      * 是否拦截短信通知
      */
@@ -0,0 +1,228 @@
+package com.github.tianma8023.smscode.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.github.tianma8023.smscode.constant.PrefConst;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of the settings used when handling SMS code.<br>
+ * The snapshot is replaced by a new one whenever a related preference changes,
+ * so the handling pipeline can read all settings of one message from one snapshot.
+ */
+public final class SmsCodeConfig {
+
+    private static final Set<String> CONFIG_KEYS = new HashSet<>(Arrays.asList(
+            PrefConst.ENABLE,
+            PrefConst.ENABLE_AUTO_INPUT_CODE,
+            PrefConst.FOCUS_MODE,
+            PrefConst.AUTO_INPUT_MODE,
+            PrefConst.MANUAL_FOCUS_IF_FAILED,
+            PrefConst.COPY_TO_CLIPBOARD,
+            PrefConst.CLEAR_CLIPBOARD,
+            PrefConst.SHOW_TOAST,
+            PrefConst.SHOW_CODE_NOTIFICATION,
+            PrefConst.AUTO_CANCEL_CODE_NOTIFICATION,
+            PrefConst.NOTIFICATION_RETENTION_TIME,
+            PrefConst.ENABLE_CODE_RECORDS,
+            PrefConst.MAX_CODE_RECORDS_COUNT,
+            PrefConst.MAX_CODE_RECORDS_AGE,
+            PrefConst.DELETE_SMS,
+            PrefConst.MARK_AS_READ,
+            PrefConst.BLOCK_NOTIFICATION
+    ));
+
+    private static volatile SmsCodeConfig sConfig;
+
+    /**
+     * SharedPreferences only holds weak references to its listeners,
+     * so keep a strong one here.
+     */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sConfigListener;
+
+    private final boolean mEnable;
+    private final boolean mAutoInputCodeEnabled;
+    private final String mFocusMode;
+    private final String mAutoInputMode;
+    private final boolean mManualFocusIfFailedEnabled;
+    private final boolean mCopyToClipboardEnabled;
+    private final boolean mShouldClearClipboard;
+    private final boolean mShowToast;
+    private final boolean mShowCodeNotification;
+    private final boolean mAutoCancelCodeNotification;
+    private final int mNotificationRetentionTime;
+    private final boolean mRecordSmsCodeEnabled;
+    private final int mMaxCodeRecordsCount;
+    private final long mMaxCodeRecordsAgeMillis;
+    private final boolean mDeleteSmsEnabled;
+    private final boolean mMarkAsReadEnabled;
+    private final boolean mBlockNotificationEnabled;
+
+    private SmsCodeConfig(Context context) {
+        mEnable = SPUtils.isEnable(context);
+        mAutoInputCodeEnabled = SPUtils.autoInputCodeEnabled(context);
+        mFocusMode = SPUtils.getFocusMode(context);
+        mAutoInputMode = SPUtils.getAutoInputMode(context);
+        mManualFocusIfFailedEnabled = SPUtils.manualFocusIfFailedEnabled(context);
+        mCopyToClipboardEnabled = SPUtils.copyToClipboardEnabled(context);
+        mShouldClearClipboard = SPUtils.shouldClearClipboard(context);
+        mShowToast = SPUtils.showToast(context);
+        mShowCodeNotification = SPUtils.showCodeNotification(context);
+        mAutoCancelCodeNotification = SPUtils.autoCancelCodeNotification(context);
+        mNotificationRetentionTime = SPUtils.getNotificationRetentionTime(context);
+        mRecordSmsCodeEnabled = SPUtils.recordSmsCodeEnabled(context);
+        mMaxCodeRecordsCount = SPUtils.getMaxCodeRecordsCount(context);
+        mMaxCodeRecordsAgeMillis = TimeUnit.DAYS.toMillis(SPUtils.getMaxCodeRecordsAge(context));
+        mDeleteSmsEnabled = SPUtils.deleteSmsEnabled(context);
+        mMarkAsReadEnabled = SPUtils.markAsReadEnabled(context);
+        mBlockNotificationEnabled = SPUtils.blockNotificationEnabled(context);
+    }
+
+    /**
+     * Get the current settings snapshot.
+     */
+    public static SmsCodeConfig get(Context context) {
+        SmsCodeConfig config = sConfig;
+        if (config == null) {
+            synchronized (SmsCodeConfig.class) {
+                config = sConfig;
+                if (config == null) {
+                    final Context appContext = context.getApplicationContext();
+                    sConfigListener = (sharedPreferences, key) -> {
+                        // key is null when the preferences are cleared
+                        if (key == null || CONFIG_KEYS.contains(key)) {
+                            sConfig = new SmsCodeConfig(appContext);
+                        }
+                    };
+                    PreferenceUtils.registerOnChangeListener(appContext, sConfigListener);
+                    config = sConfig = new SmsCodeConfig(appContext);
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 总开关是否打开
+     */
+    public boolean isEnable() {
+        return mEnable;
+    }
+
+    /**
+     * 自动输入总开关是否打开
+     */
+    public boolean autoInputCodeEnabled() {
+        return mAutoInputCodeEnabled;
+    }
+
+    /**
+     * 对焦模式
+     */
+    public String getFocusMode() {
+        return mFocusMode;
+    }
+
+    /**
+     * 自动输入模式
+     */
+    public String getAutoInputMode() {
+        return mAutoInputMode;
+    }
+
+    /**
+     * 是否在自动对焦失败后转为手动对焦
+     */
+    public boolean manualFocusIfFailedEnabled() {
+        return mManualFocusIfFailedEnabled;
+    }
+
+    /**
+     * 是否复制到剪切板
+     */
+    public boolean copyToClipboardEnabled() {
+        return mCopyToClipboardEnabled;
+    }
+
+    /**
+     * 是否应该在自动输入成功之后清理剪切板
+     */
+    public boolean shouldClearClipboard() {
+        return mShouldClearClipboard;
+    }
+
+    /**
+     * 复制到剪切板之后，是否显示toast
+     */
+    public boolean showToast() {
+        return mShowToast;
+    }
+
+    /**
+     * 是否显示验证码通知
+     */
+    public boolean showCodeNotification() {
+        return mShowCodeNotification;
+    }
+
+    /**
+     * 是否自动清除验证码通知
+     */
+    public boolean autoCancelCodeNotification() {
+        return mAutoCancelCodeNotification;
+    }
+
+    /**
+     * 验证码通知保留时间(秒)
+     */
+    public int getNotificationRetentionTime() {
+        return mNotificationRetentionTime;
+    }
+
+    /**
+     * 是否记录短信验证码
+     */
+    public boolean recordSmsCodeEnabled() {
+        return mRecordSmsCodeEnabled;
+    }
+
+    /**
+     * 最多保留的验证码记录条数
+     */
+    public int getMaxCodeRecordsCount() {
+        return mMaxCodeRecordsCount;
+    }
+
+    /**
+     * 验证码记录最长保留时间(毫秒)，0表示不限
+     */
+    public long getMaxCodeRecordsAgeMillis() {
+        return mMaxCodeRecordsAgeMillis;
+    }
+
+    /**
+     * 是否删除验证码短信
+     */
+    public boolean deleteSmsEnabled() {
+        return mDeleteSmsEnabled;
+    }
+
+    /**
+     * 标记为已读是否打开
+     */
+    public boolean markAsReadEnabled() {
+        return mMarkAsReadEnabled;
+    }
+
+    /**
+     * 是否拦截短信通知
+     */
+    public boolean blockNotificationEnabled() {
+        return mBlockNotificationEnabled;
+    }
+}
@@ -1,35 +1,81 @@
 package com.github.tianma8023.smscode.utils;
 
 import android.content.Context;
-import android.text.TextUtils;
+import android.content.SharedPreferences;
 
-import com.github.tianma8023.smscode.constant.SmsCodeConst;
+import com.github.tianma8023.smscode.constant.PrefConst;
 import com.github.tianma8023.smscode.db.DBManager;
 import com.github.tianma8023.smscode.entity.SmsCodeRule;
+import com.github.tianma8023.smscode.parser.SmsCodeExtractor;
+import com.github.tianma8023.smscode.parser.SmsCodeParser;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 验证码相关Utils
  */
 public class SmsCodeUtils {
 
+    private static volatile SmsCodeExtractor sExtractor;
+
+    /**
+     * SharedPreferences only holds weak references to its listeners,
+     * so keep a strong one here.
+     */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sKeywordsListener;
+
     private SmsCodeUtils() {
     }
 
     /**
-     * 是否包含中文
-     *
-     * @param text text
+     * Get the shared SMS code extractor, which is backed by the keywords preference
+     * and the custom rules in database. The custom rules are loaded from database only once,
+     * and then kept in sync by the rule changes made through DBManager.
      */
-    private static boolean containsChinese(String text) {
-        String regex = "[\u4e00-\u9fa5]|。";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(text);
-        return matcher.find();
+    public static SmsCodeExtractor getExtractor(Context context) {
+        SmsCodeExtractor extractor = sExtractor;
+        if (extractor == null) {
+            synchronized (SmsCodeUtils.class) {
+                extractor = sExtractor;
+                if (extractor == null) {
+                    final Context appContext = context.getApplicationContext();
+                    final SmsCodeExtractor newExtractor = new SmsCodeExtractor(
+                            () -> SPUtils.getSMSCodeKeywords(appContext),
+                            () -> DBManager.get(appContext).queryAllSmsCodeRules());
+                    sKeywordsListener = (sharedPreferences, key) -> {
+                        if (PrefConst.SMSCODE_KEYWORDS.equals(key)) {
+                            newExtractor.onKeywordsChanged();
+                        }
+                    };
+                    PreferenceUtils.registerOnChangeListener(appContext, sKeywordsListener);
+                    // keep the compiled custom rules in sync with database
+                    DBManager.get(appContext).registerSmsCodeRuleObserver(new DBManager.SmsCodeRuleObserver() {
+                        @Override
+                        public void onRulesAddedOrUpdated(List<SmsCodeRule> rules) {
+                            newExtractor.onRulesAddedOrUpdated(rules);
+                        }
+
+                        @Override
+                        public void onRulesRemoved(List<SmsCodeRule> rules) {
+                            newExtractor.onRulesRemoved(rules);
+                        }
+
+                        @Override
+                        public void onAllRulesRemoved() {
+                            newExtractor.onRulesChanged();
+                        }
+                    });
+                    // persist the hit statistics of custom rules
+                    newExtractor.setRuleHitListener(ruleId -> {
+                        if (ruleId != null) {
+                            DBManager.get(appContext).recordSmsCodeRuleHit(ruleId, System.currentTimeMillis());
+                        }
+                    });
+                    extractor = sExtractor = newExtractor;
+                }
+            }
+        }
+        return extractor;
     }
 
     /**
@@ -39,235 +85,29 @@ public class SmsCodeUtils {
      * @param content content
      */
     public static boolean containsCodeKeywords(Context context, String content) {
-        String keywordsRegex = loadCodeKeywords(context);
-        String keyword = parseKeyword(keywordsRegex, content);
-        return !TextUtils.isEmpty(keyword);
-    }
-
-    /**
-     * 解析文本内容中的验证码关键字，如果有则返回第一个匹配到的关键字，否则返回 空字符串
-     */
-    private static String parseKeyword(String keywordsRegex, String content) {
-        Pattern pattern = Pattern.compile(keywordsRegex);
-        Matcher matcher = pattern.matcher(content);
-        if (matcher.find()) {
-            return matcher.group();
-        }
-        return "";
-    }
-
-    private static String loadCodeKeywords(Context context) {
-        return SPUtils.getSMSCodeKeywords(context);
+        return getExtractor(context).containsCodeKeywords(content);
     }
 
     /**
      * 解析文本中的验证码并返回，如果不存在返回空字符
      */
     public static String parseSmsCodeIfExists(Context context, String content) {
-        String result = parseByCustomRules(context, content);
-        if (TextUtils.isEmpty(result)) {
-            result = parseByDefaultRule(context, content);
-        }
-        return result;
-    }
-
-    /**
-     * Parse SMS code by default rule
-     *
-     * @param context context
-     * @param content message body
-     * @return the SMS code if matches, otherwise return empty string
-     */
-    private static String parseByDefaultRule(Context context, String content) {
-        String result = "";
-        String keywordsRegex = loadCodeKeywords(context);
-        String keyword = parseKeyword(keywordsRegex, content);
-        if (!TextUtils.isEmpty(keyword)) {
-            if (containsChinese(content)) {
-                result = getSmsCodeCN(keyword, content);
-            } else {
-                result = getSmsCodeEN(keyword, content);
-            }
-        }
-        return result;
-    }
-
-    /**
-     * 获取中文短信中包含的验证码
-     */
-    private static String getSmsCodeCN(String keyword, String content) {
-        // 之前的正则表达式是 [a-zA-Z0-9]{4,8}
-        // 现在的正则表达式是 [a-zA-Z0-9]+(\.[a-zA-Z0-9]+)? 匹配数字和字母之间最多一个.的字符串
-        // 之前的不能识别和剔除小数，比如 123456.231，很容易就把 123456 作为验证码。
-        String codeRegex = "(?<![a-zA-Z0-9])[a-zA-Z0-9]{4,8}(?![a-zA-Z0-9])";
-        // 先去掉所有空白字符处理
-        String handledContent = removeAllWhiteSpaces(content);
-        String smsCode = getSmsCode(codeRegex, keyword, handledContent);
-        if (TextUtils.isEmpty(smsCode)) {
-            // 没解析出就按照原文本再处理一遍
-            smsCode = getSmsCode(codeRegex, keyword, content);
-        }
-        return smsCode;
-    }
-
-    /**
-     * Remove all white spaces.
-     */
-    private static String removeAllWhiteSpaces(String content) {
-        return content.replaceAll("\\s*", "");
-    }
-
-    /**
-     * 获取英文短信包含的验证码
-     */
-    private static String getSmsCodeEN(String keyword, String content) {
-        // 之前的正则表达式是 [0-9]{4,8} 匹配由数字组成的4到8长度的字符串
-        // 现在的正则表达式是 [0-9]+(\\.[0-9]+)? 匹配数字之间最多一个.的字符串
-        // 之前的不能识别和剔除小数，比如 123456.231，很容易就把 123456 作为验证码。
-        String codeRegex = "(?<![0-9])[0-9]{4,8}(?![0-9])";
-        String smsCode = getSmsCode(codeRegex, keyword, content);
-        if (TextUtils.isEmpty(smsCode)) {
-            // 没解析出就去掉所有空白字符再处理
-            content = removeAllWhiteSpaces(content);
-            smsCode = getSmsCode(codeRegex, keyword, content);
-        }
-        return smsCode;
-    }
-
-    /*
-     * Parse SMS code
-     *
-     * @param codeRegex SMS code regular expression
-     * @param keyword     SMS code SMS keywords expression
-     * @param content           SMS content
-     * @return the SMS code if it's found, otherwise return empty string ""
-     */
-    private static String getSmsCode(String codeRegex, String keyword, String content) {
-        Pattern p = Pattern.compile(codeRegex);
-        Matcher m = p.matcher(content);
-        List<String> possibleCodes = new ArrayList<>();
-        while (m.find()) {
-            final String matchedStr = m.group();
-            possibleCodes.add(matchedStr);
-        }
-        if (possibleCodes.isEmpty()) { // no possible code
-            return "";
-        }
-
-        List<String> filteredCodes = new ArrayList<>();
-        for (String possibleCode : possibleCodes) {
-            if (isNearToKeyword(keyword, possibleCode, content)) {
-                filteredCodes.add(possibleCode);
-            }
-        }
-        if (filteredCodes.isEmpty()) { // no possible code near to keywords
-            filteredCodes = possibleCodes;
-        }
-
-        int maxMatchLevel = LEVEL_NONE;
-        // minimum distance for possible code to keyword
-        int minDistance = content.length();
-        String smsCode = "";
-        for (String filteredCode : filteredCodes) {
-            final int curLevel = getMatchLevel(filteredCode);
-            if (curLevel > maxMatchLevel) {
-                maxMatchLevel = curLevel;
-                // reset the minDistance
-                minDistance = distanceToKeyword(keyword, filteredCode, content);
-                smsCode = filteredCode;
-            } else if (curLevel == maxMatchLevel) {
-                int curDistance = distanceToKeyword(keyword, filteredCode, content);
-                if (curDistance < minDistance) {
-                    minDistance = curDistance;
-                    smsCode = filteredCode;
-                }
-            }
-        }
-        return smsCode;
-    }
-
-    /* 匹配度：6位纯数字，匹配度最高 */
-    private static final int LEVEL_DIGITAL_6 = 4;
-    /* 匹配度：4位纯数字，匹配度次之 */
-    private static final int LEVEL_DIGITAL_4 = 3;
-    /* 匹配度：纯数字, 匹配度最高*/
-    private static final int LEVEL_DIGITAL_OTHERS = 2;
-    /* 匹配度：数字+字母 混合, 匹配度其次*/
-    private static final int LEVEL_TEXT = 1;
-    /* 匹配度：纯字母, 匹配度最低*/
-    private static final int LEVEL_CHARACTER = 0;
-    private static final int LEVEL_NONE = -1;
-
-    private static int getMatchLevel(String matchedStr) {
-        if (matchedStr.matches("^[0-9]{6}$"))
-            return LEVEL_DIGITAL_6;
-        if (matchedStr.matches("^[0-9]{4}$"))
-            return LEVEL_DIGITAL_4;
-        if (matchedStr.matches("^[0-9]*$"))
-            return LEVEL_DIGITAL_OTHERS;
-        if (matchedStr.matches("^[a-zA-Z]*$"))
-            return LEVEL_CHARACTER;
-        return LEVEL_TEXT;
+        return getExtractor(context).extract(content);
     }
 
     /**
-     * 可能的验证码是否靠近关键字
+     * 试解析文本中的验证码，不计入自定义规则的命中统计
      */
-    private static boolean isNearToKeyword(String keyword, String possibleCode, String content) {
-        int beginIndex = 0, endIndex = content.length() - 1;
-        int curIndex = content.indexOf(possibleCode);
-        int strLength = possibleCode.length();
-        int magicNumber = 30;
-        if (curIndex - magicNumber > 0) {
-            beginIndex = curIndex - magicNumber;
-        }
-        if (curIndex + strLength + magicNumber < endIndex) {
-            endIndex = curIndex + strLength + magicNumber;
-        }
-        return content.substring(beginIndex, endIndex).contains(keyword);
-    }
-
-    /**
-     * 计算可能的验证码与关键字的距离
-     */
-    private static int distanceToKeyword(String keyword, String possibleCode, String content) {
-        int keywordIdx = content.indexOf(keyword);
-        int possibleCodeIdx = content.indexOf(possibleCode);
-        return Math.abs(keywordIdx - possibleCodeIdx);
+    public static String parseSmsCodeForTest(Context context, String content) {
+        return getExtractor(context).extractWithoutHit(content);
     }
 
-
     public static boolean isPossiblePhoneNumber(String text) {
-        return text.matches("\\d{8,}");
+        return SmsCodeParser.isPossiblePhoneNumber(text);
     }
 
     public static boolean containsPhoneNumberKeywords(String content) {
-        Pattern pattern = Pattern.compile(SmsCodeConst.PHONE_NUMBER_KEYWORDS);
-        Matcher matcher = pattern.matcher(content);
-        return matcher.find();
-    }
-
-    /**
-     * Parse SMS code by custom rules
-     *
-     * @param context context
-     * @param content message body
-     * @return the SMS code if matches, otherwise return empty string
-     */
-    private static String parseByCustomRules(Context context, String content) {
-        List<SmsCodeRule> rules = DBManager.get(context).queryAllSmsCodeRules();
-        String lowerContent = content.toLowerCase();
-        for (SmsCodeRule rule : rules) {
-            if (lowerContent.contains(rule.getCompany().toLowerCase())
-                    && lowerContent.contains(rule.getCodeKeyword().toLowerCase())) {
-                Pattern pattern = Pattern.compile(rule.getCodeRegex());
-                Matcher matcher = pattern.matcher(content);
-                if (matcher.find()) {
-                    return matcher.group();
-                }
-            }
-        }
-        return "";
+        return SmsCodeParser.containsPhoneNumberKeywords(content);
     }
 
     /**
@@ -277,23 +117,6 @@ public class SmsCodeUtils {
      * @return company info if it exists, otherwise return empty string
      */
     public static String parseCompany(String content) {
-        String regex = "((?<=【)(.*?)(?=】))|((?<=\\[)(.*?)(?=\\]))";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(content);
-        List<String> possibleCompanies = new ArrayList<>();
-        while (matcher.find()) {
-            possibleCompanies.add(matcher.group());
-        }
-        StringBuilder sb = new StringBuilder();
-        boolean needBlank = false; // 是否需要空格分隔
-        for (String company : possibleCompanies) {
-            if (needBlank) {
-                sb.append(' ');
-            } else {
-                needBlank = true;
-            }
-            sb.append(company);
-        }
-        return sb.toString();
+        return SmsCodeParser.parseCompany(content);
     }
 }
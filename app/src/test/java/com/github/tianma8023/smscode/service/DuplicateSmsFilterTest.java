@@ -0,0 +1,106 @@
+package com.github.tianma8023.smscode.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DuplicateSmsFilterTest {
+
+    private static final long DATE = 1697500000000L;
+
+    @Test
+    public void sameMessageIsDuplicate() {
+        DuplicateSmsFilter filter = new DuplicateSmsFilter(16);
+        assertFalse(filter.isDuplicate("10086", "验证码 482913", DATE));
+        assertTrue(filter.isDuplicate("10086", "验证码 482913", DATE));
+        // reported again by another intake path a bit later
+        assertTrue(filter.isDuplicate("10086", "验证码 482913", DATE + 3000));
+    }
+
+    @Test
+    public void differentMessagesAreNotDuplicate() {
+        DuplicateSmsFilter filter = new DuplicateSmsFilter(16);
+        assertFalse(filter.isDuplicate("10086", "验证码 482913", DATE));
+        assertFalse(filter.isDuplicate("10010", "验证码 482913", DATE));
+        assertFalse(filter.isDuplicate("10086", "验证码 482914", DATE));
+        // the sender and body boundary matters
+        assertFalse(filter.isDuplicate("ab", "c", DATE));
+        assertFalse(filter.isDuplicate("a", "bc", DATE));
+        assertFalse(filter.isDuplicate(null, "验证码 482913", DATE));
+    }
+
+    @Test
+    public void sameMessageLaterIsNotDuplicate() {
+        DuplicateSmsFilter filter = new DuplicateSmsFilter(16);
+        assertFalse(filter.isDuplicate("10086", "验证码 482913", DATE));
+        // beyond the adjacent time buckets
+        assertFalse(filter.isDuplicate("10086", "验证码 482913", DATE + 60000));
+    }
+
+    @Test
+    public void oldestIsEvicted() {
+        DuplicateSmsFilter filter = new DuplicateSmsFilter(4);
+        for (int i = 0; i < 4; i++) {
+            assertFalse(filter.isDuplicate("10086", "message " + i, DATE));
+        }
+        assertTrue(filter.isDuplicate("10086", "message 0", DATE));
+
+        assertFalse(filter.isDuplicate("10086", "message 4", DATE));
+        // message 0 is evicted by message 4, message 1 is still remembered
+        assertTrue(filter.isDuplicate("10086", "message 1", DATE));
+        assertFalse(filter.isDuplicate("10086", "message 0", DATE));
+    }
+
+    @Test
+    public void capacityMustBePowerOfTwo() {
+        try {
+            new DuplicateSmsFilter(12);
+            fail("capacity 12 is accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void concurrentIntakes() throws InterruptedException {
+        final int messageCount = 32;
+        for (int round = 0; round < 100; round++) {
+            final DuplicateSmsFilter filter = new DuplicateSmsFilter(64);
+            final AtomicInteger accepted = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < messageCount; i++) {
+                        if (!filter.isDuplicate("10086", "message " + i, DATE)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // each message is accepted by exactly one thread
+            assertEquals(messageCount, accepted.get());
+            for (int i = 0; i < messageCount; i++) {
+                assertTrue(filter.isDuplicate("10086", "message " + i, DATE));
+            }
+        }
+    }
+}
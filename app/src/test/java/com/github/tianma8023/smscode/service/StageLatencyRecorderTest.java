@@ -0,0 +1,86 @@
+package com.github.tianma8023.smscode.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SystemClock returns 0 in local unit tests, so every recorded latency is 0 here.
+ */
+public class StageLatencyRecorderTest {
+
+    private final StageLatencyRecorder mRecorder = StageLatencyRecorder.get();
+
+    @Before
+    public void setUp() {
+        mRecorder.clear();
+    }
+
+    @Test
+    public void recordAndSnapshot() {
+        mRecorder.record(StageLatencyRecorder.STAGE_RECEIVE, 1);
+        mRecorder.record(StageLatencyRecorder.STAGE_INBOX_OP, 1);
+        mRecorder.record(StageLatencyRecorder.STAGE_PARSE, 1);
+
+        long[][] samples = mRecorder.snapshot();
+        assertEquals(3, samples.length);
+        // oldest first
+        assertArrayEquals(new long[]{StageLatencyRecorder.STAGE_RECEIVE, 0}, samples[0]);
+        assertArrayEquals(new long[]{StageLatencyRecorder.STAGE_INBOX_OP, 0}, samples[1]);
+        assertArrayEquals(new long[]{StageLatencyRecorder.STAGE_PARSE, 0}, samples[2]);
+    }
+
+    @Test
+    public void unknownReceiveTimeIsIgnored() {
+        mRecorder.record(StageLatencyRecorder.STAGE_RECEIVE, 0);
+        mRecorder.record(StageLatencyRecorder.STAGE_RECEIVE, -1);
+        assertEquals(0, mRecorder.snapshot().length);
+    }
+
+    @Test
+    public void oldestIsOverwritten() {
+        mRecorder.record(StageLatencyRecorder.STAGE_RECEIVE, 1);
+        for (int i = 0; i < 1024; i++) {
+            mRecorder.record(StageLatencyRecorder.STAGE_TEXT_SET, 1);
+        }
+        long[][] samples = mRecorder.snapshot();
+        assertEquals(1024, samples.length);
+        for (long[] sample : samples) {
+            assertEquals(StageLatencyRecorder.STAGE_TEXT_SET, sample[0]);
+        }
+    }
+
+    @Test
+    public void latenciesByStage() {
+        mRecorder.record(StageLatencyRecorder.STAGE_CLIPBOARD, 1);
+        mRecorder.record(StageLatencyRecorder.STAGE_CLIPBOARD, 1);
+        mRecorder.record(StageLatencyRecorder.STAGE_TOAST, 1);
+
+        long[][] latencies = mRecorder.latenciesByStage();
+        assertEquals(StageLatencyRecorder.STAGE_COUNT, latencies.length);
+        assertEquals(2, latencies[StageLatencyRecorder.STAGE_CLIPBOARD].length);
+        assertEquals(1, latencies[StageLatencyRecorder.STAGE_TOAST].length);
+        assertEquals(0, latencies[StageLatencyRecorder.STAGE_RECEIVE].length);
+    }
+
+    @Test
+    public void percentile() {
+        long[] latencies = {10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+        assertEquals(10, StageLatencyRecorder.percentile(latencies, 0));
+        assertEquals(10, StageLatencyRecorder.percentile(latencies, 10));
+        assertEquals(50, StageLatencyRecorder.percentile(latencies, 50));
+        assertEquals(60, StageLatencyRecorder.percentile(latencies, 51));
+        assertEquals(100, StageLatencyRecorder.percentile(latencies, 99));
+        assertEquals(100, StageLatencyRecorder.percentile(latencies, 100));
+        assertEquals(7, StageLatencyRecorder.percentile(new long[]{7}, 95));
+        assertEquals(-1, StageLatencyRecorder.percentile(new long[0], 50));
+    }
+
+    @Test
+    public void stageNames() {
+        assertEquals("receive", StageLatencyRecorder.getStageName(StageLatencyRecorder.STAGE_RECEIVE));
+        assertEquals("inbox_op", StageLatencyRecorder.getStageName(StageLatencyRecorder.STAGE_INBOX_OP));
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Anonymized SMS corpus bundled with benchmarks.
+ */
+final class Corpus {
+
+    private static final String CORPUS_FILE = "/sms_corpus.txt";
+
+    static final String LANG_ALL = "all";
+
+    private Corpus() {
+    }
+
+    /**
+     * Load message bodies of the corpus.
+     *
+     * @param lang "zh-CN", "zh-TW", "en" or {@link #LANG_ALL}
+     */
+    static String[] load(String lang) {
+        List<String> bodies = new ArrayList<>();
+        try (InputStream in = Corpus.class.getResourceAsStream(CORPUS_FILE);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 3);
+                if (LANG_ALL.equals(lang) || fields[0].equals(lang)) {
+                    bodies.add(fields[2].replace("\\n", "\n"));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bodies.toArray(new String[0]);
+    }
+
+    /**
+     * Custom rules for benchmarks, a few of them match the corpus and the others are fillers.
+     *
+     * @param count rules count
+     */
+    static List<CodeRule> rules(int count) {
+        List<CodeRule> rules = new ArrayList<>(count);
+        String[][] realRules = {
+                {"某宝", "验证码", "(?<=验证码 )[0-9]{6}"},
+                {"某購物", "動態碼", "[0-9]{4}"},
+                {"ExampleApp", "login code", "[0-9]{4}(?= is your)"},
+                {"ExampleBank", "one-time code", "(?<=code )[0-9]{4}"},
+        };
+        // fillers are added first, so matching rules are at the tail of evaluation order
+        for (int i = 0; rules.size() < count - realRules.length; i++) {
+            rules.add(new Rule(rules.size(), "公司" + i, "keyword" + i, "(?<=keyword" + i + " )[0-9]{6}"));
+        }
+        for (int i = 0; i < realRules.length && rules.size() < count; i++) {
+            rules.add(new Rule(rules.size(), realRules[i][0], realRules[i][1], realRules[i][2]));
+        }
+        return rules;
+    }
+
+    private static final class Rule implements CodeRule {
+        private final Long mId;
+        private final String mCompany;
+        private final String mCodeKeyword;
+        private final String mCodeRegex;
+
+        Rule(long id, String company, String codeKeyword, String codeRegex) {
+            mId = id;
+            mCompany = company;
+            mCodeKeyword = codeKeyword;
+            mCodeRegex = codeRegex;
+        }
+
+        @Override
+        public Long getId() {
+            return mId;
+        }
+
+        @Override
+        public String getCompany() {
+            return mCompany;
+        }
+
+        @Override
+        public String getCodeKeyword() {
+            return mCodeKeyword;
+        }
+
+        @Override
+        public String getCodeRegex() {
+            return mCodeRegex;
+        }
+
+        @Override
+        public Integer getHitCount() {
+            return null;
+        }
+    }
+}
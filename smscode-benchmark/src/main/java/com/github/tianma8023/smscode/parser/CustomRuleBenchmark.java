@@ -0,0 +1,43 @@
+package com.github.tianma8023.smscode.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Custom rule matching over the corpus with different rule counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomRuleBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int ruleCount;
+
+    private String[] mBodies;
+    private CompiledRuleSet mRuleSet;
+
+    @Setup
+    public void setup() {
+        mBodies = Corpus.load(Corpus.LANG_ALL);
+        mRuleSet = CompiledRuleSet.compile(Corpus.rules(ruleCount));
+    }
+
+    @Benchmark
+    public void matchCustomRules(Blackhole bh) {
+        for (String body : mBodies) {
+            bh.consume(mRuleSet.match(body));
+        }
+    }
+}
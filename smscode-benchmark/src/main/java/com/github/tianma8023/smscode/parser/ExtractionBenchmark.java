@@ -0,0 +1,67 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Candidate extraction, default rule parsing and company parsing over the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"all", "zh-CN", "zh-TW", "en"})
+    public String lang;
+
+    private String[] mBodies;
+    private SmsCodeParser mParser;
+    private NormalizedText mNormalized;
+    private Candidates mOriginalCandidates;
+    private Candidates mNormalizedCandidates;
+
+    @Setup
+    public void setup() {
+        mBodies = Corpus.load(lang);
+        mParser = new SmsCodeParser(SmsCodeConst.VERIFICATION_KEYWORDS_REGEX);
+        mNormalized = new NormalizedText();
+        mOriginalCandidates = new Candidates();
+        mNormalizedCandidates = new Candidates();
+    }
+
+    @Benchmark
+    public void lexCandidates(Blackhole bh) {
+        for (String body : mBodies) {
+            CandidateLexer.lex(body, CandidateLexer.MODE_ALPHANUMERIC,
+                    mOriginalCandidates, mNormalized, mNormalizedCandidates);
+            bh.consume(mOriginalCandidates.size() + mNormalizedCandidates.size());
+        }
+    }
+
+    @Benchmark
+    public void parseDefaultRule(Blackhole bh) {
+        for (String body : mBodies) {
+            bh.consume(mParser.parse(body));
+        }
+    }
+
+    @Benchmark
+    public void parseCompany(Blackhole bh) {
+        for (String body : mBodies) {
+            bh.consume(SmsCodeParser.parseCompany(body));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Keyword detection over the corpus, by the automaton and by the regex fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordBenchmark {
+
+    @Param({"all", "zh-CN", "zh-TW", "en"})
+    public String lang;
+
+    /**
+     * "literal" keywords use the automaton, "regex" keywords force the regex fallback.
+     */
+    @Param({"literal", "regex"})
+    public String keywords;
+
+    private String[] mBodies;
+    private KeywordMatcher mMatcher;
+
+    @Setup
+    public void setup() {
+        mBodies = Corpus.load(lang);
+        String regex = SmsCodeConst.VERIFICATION_KEYWORDS_REGEX;
+        if ("regex".equals(keywords)) {
+            regex = "(?:" + regex + ")";
+        }
+        mMatcher = KeywordMatcher.compile(regex);
+    }
+
+    @Benchmark
+    public void containsAny(Blackhole bh) {
+        for (String body : mBodies) {
+            bh.consume(mMatcher.containsAny(body));
+        }
+    }
+
+    @Benchmark
+    public void findAll(Blackhole bh) {
+        for (String body : mBodies) {
+            bh.consume(mMatcher.findAll(body));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a fixed set of literal patterns.<br>
+ * The automaton is immutable after construction and can be shared between threads,
+ * callers drive it by {@link #nextState(int, char)} so that scanning allocates nothing.
+ */
+final class AhoCorasick {
+
+    static final int ROOT = 0;
+    static final int NONE = -1;
+
+    // sorted transition labels and targets of each state
+    private final char[][] mLabels;
+    private final int[][] mTargets;
+    private final int[] mFail;
+    // the first pattern which ends at each state
+    private final int[] mOutput;
+    // the nearest state on the failure chain which has output
+    private final int[] mDictLink;
+    // the next pattern which is the same as this pattern
+    private final int[] mNextSamePattern;
+    private final int[] mPatternLengths;
+    private final int mMaxPatternLength;
+
+    AhoCorasick(String[] patterns) {
+        List<TreeMap<Character, Integer>> gotoList = new ArrayList<>();
+        List<Integer> outputList = new ArrayList<>();
+        gotoList.add(new TreeMap<>());
+        outputList.add(NONE);
+
+        mPatternLengths = new int[patterns.length];
+        mNextSamePattern = new int[patterns.length];
+        Arrays.fill(mNextSamePattern, NONE);
+        int maxLength = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            String pattern = patterns[i];
+            int state = ROOT;
+            for (int j = 0; j < pattern.length(); j++) {
+                Integer next = gotoList.get(state).get(pattern.charAt(j));
+                if (next == null) {
+                    next = gotoList.size();
+                    gotoList.add(new TreeMap<>());
+                    outputList.add(NONE);
+                    gotoList.get(state).put(pattern.charAt(j), next);
+                }
+                state = next;
+            }
+            int first = outputList.get(state);
+            if (first == NONE) {
+                outputList.set(state, i);
+            } else {
+                int last = first;
+                while (mNextSamePattern[last] != NONE) {
+                    last = mNextSamePattern[last];
+                }
+                mNextSamePattern[last] = i;
+            }
+            mPatternLengths[i] = pattern.length();
+            maxLength = Math.max(maxLength, pattern.length());
+        }
+        mMaxPatternLength = maxLength;
+
+        final int stateCount = gotoList.size();
+        mLabels = new char[stateCount][];
+        mTargets = new int[stateCount][];
+        mOutput = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            TreeMap<Character, Integer> transitions = gotoList.get(s);
+            char[] labels = new char[transitions.size()];
+            int[] targets = new int[transitions.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+                labels[k] = entry.getKey();
+                targets[k] = entry.getValue();
+                k++;
+            }
+            mLabels[s] = labels;
+            mTargets[s] = targets;
+            mOutput[s] = outputList.get(s);
+        }
+
+        // breadth-first construction of failure links and dictionary links
+        mFail = new int[stateCount];
+        mDictLink = new int[stateCount];
+        mDictLink[ROOT] = NONE;
+        int[] queue = new int[stateCount];
+        int head = 0, tail = 0;
+        for (int target : mTargets[ROOT]) {
+            mFail[target] = ROOT;
+            mDictLink[target] = NONE;
+            queue[tail++] = target;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            char[] labels = mLabels[state];
+            int[] targets = mTargets[state];
+            for (int k = 0; k < labels.length; k++) {
+                int target = targets[k];
+                int fail = mFail[state];
+                int next;
+                while ((next = transition(fail, labels[k])) == NONE && fail != ROOT) {
+                    fail = mFail[fail];
+                }
+                mFail[target] = next == NONE ? ROOT : next;
+                int failState = mFail[target];
+                mDictLink[target] = mOutput[failState] != NONE ? failState : mDictLink[failState];
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    private int transition(int state, char c) {
+        int idx = Arrays.binarySearch(mLabels[state], c);
+        return idx >= 0 ? mTargets[state][idx] : NONE;
+    }
+
+    /**
+     * The state after consuming char c in the given state.
+     */
+    int nextState(int state, char c) {
+        int next;
+        while ((next = transition(state, c)) == NONE) {
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = mFail[state];
+        }
+        return next;
+    }
+
+    /**
+     * The first pattern ending at the given state, or {@link #NONE}.
+     */
+    int output(int state) {
+        return mOutput[state];
+    }
+
+    /**
+     * The next state on the failure chain which has output, or {@link #NONE}.
+     */
+    int dictLink(int state) {
+        return mDictLink[state];
+    }
+
+    /**
+     * The next pattern which equals to the given pattern, or {@link #NONE}.
+     */
+    int nextSamePattern(int pattern) {
+        return mNextSamePattern[pattern];
+    }
+
+    int patternLength(int pattern) {
+        return mPatternLengths[pattern];
+    }
+
+    int maxPatternLength() {
+        return mMaxPatternLength;
+    }
+}
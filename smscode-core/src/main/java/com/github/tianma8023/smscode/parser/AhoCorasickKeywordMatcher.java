@@ -0,0 +1,70 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Keyword matcher for literal keywords based on Aho-Corasick automaton.
+ */
+final class AhoCorasickKeywordMatcher extends KeywordMatcher {
+
+    private final String[] mKeywords;
+    private final AhoCorasick mAutomaton;
+
+    AhoCorasickKeywordMatcher(String[] keywords) {
+        mKeywords = keywords;
+        mAutomaton = new AhoCorasick(keywords);
+    }
+
+    @Override
+    public boolean containsAny(CharSequence text) {
+        int state = AhoCorasick.ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = mAutomaton.nextState(state, text.charAt(i));
+            if (mAutomaton.output(state) != AhoCorasick.NONE
+                    || mAutomaton.dictLink(state) != AhoCorasick.NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String findFirst(CharSequence text) {
+        // Same as regex alternation: the leftmost hit wins,
+        // and the earlier keyword wins when several hits start at the same offset.
+        int bestStart = Integer.MAX_VALUE;
+        int bestKeyword = AhoCorasick.NONE;
+        final int maxLength = mAutomaton.maxPatternLength();
+        int state = AhoCorasick.ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            if (bestKeyword != AhoCorasick.NONE && i - maxLength >= bestStart) {
+                // no later hit can start before the best one
+                break;
+            }
+            state = mAutomaton.nextState(state, text.charAt(i));
+            for (int s = state; s != AhoCorasick.NONE; s = mAutomaton.dictLink(s)) {
+                for (int k = mAutomaton.output(s); k != AhoCorasick.NONE; k = mAutomaton.nextSamePattern(k)) {
+                    int start = i + 1 - mAutomaton.patternLength(k);
+                    if (start < bestStart || (start == bestStart && k < bestKeyword)) {
+                        bestStart = start;
+                        bestKeyword = k;
+                    }
+                }
+            }
+        }
+        return bestKeyword == AhoCorasick.NONE ? "" : mKeywords[bestKeyword];
+    }
+
+    @Override
+    void findAll(CharSequence text, KeywordHits hits) {
+        hits.clear();
+        int state = AhoCorasick.ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = mAutomaton.nextState(state, text.charAt(i));
+            for (int s = state; s != AhoCorasick.NONE; s = mAutomaton.dictLink(s)) {
+                int k = mAutomaton.output(s);
+                if (k != AhoCorasick.NONE) {
+                    hits.add(i + 1 - mAutomaton.patternLength(k), i + 1);
+                }
+            }
+        }
+    }
+}
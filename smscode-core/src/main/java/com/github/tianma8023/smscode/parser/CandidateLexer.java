@@ -0,0 +1,123 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Hand-written lexer which finds SMS code candidates in one pass.<br>
+ * A candidate is a maximal run of code chars whose length is in [4, 8], which is the same as
+ * <code>(?&lt;![a-zA-Z0-9])[a-zA-Z0-9]{4,8}(?![a-zA-Z0-9])</code> in alphanumeric mode and
+ * <code>(?&lt;![0-9])[0-9]{4,8}(?![0-9])</code> in digital mode.<br>
+ * The original text and its white-space-free view are lexed in the same pass.
+ */
+final class CandidateLexer {
+
+    /* 字母和数字组成的验证码 (中文短信) */
+    static final int MODE_ALPHANUMERIC = 0;
+    /* 纯数字组成的验证码 (英文短信) */
+    static final int MODE_DIGITAL = 1;
+
+    /* 匹配度：6位纯数字，匹配度最高 */
+    static final int LEVEL_DIGITAL_6 = 4;
+    /* 匹配度：4位纯数字，匹配度次之 */
+    static final int LEVEL_DIGITAL_4 = 3;
+    /* 匹配度：纯数字, 匹配度最高*/
+    static final int LEVEL_DIGITAL_OTHERS = 2;
+    /* 匹配度：数字+字母 混合, 匹配度其次*/
+    static final int LEVEL_TEXT = 1;
+    /* 匹配度：纯字母, 匹配度最低*/
+    static final int LEVEL_CHARACTER = 0;
+    static final int LEVEL_NONE = -1;
+
+    private static final int MIN_CODE_LENGTH = 4;
+    private static final int MAX_CODE_LENGTH = 8;
+
+    private CandidateLexer() {
+    }
+
+    /**
+     * Lex the text, fill the normalized view, and collect the candidates of both views.
+     *
+     * @param text          original text
+     * @param mode          {@link #MODE_ALPHANUMERIC} or {@link #MODE_DIGITAL}
+     * @param originalOut   candidates of the original text
+     * @param normalized    white-space-free view to fill
+     * @param normalizedOut candidates of the normalized view
+     */
+    static void lex(CharSequence text, int mode, Candidates originalOut,
+                    NormalizedText normalized, Candidates normalizedOut) {
+        final int len = text.length();
+        originalOut.clear();
+        normalizedOut.clear();
+        normalized.reset(len);
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (NormalizedText.isWhiteSpace(c)) {
+                // white spaces break runs only in the original text
+                endRun(originalOut, i, null);
+                continue;
+            }
+            final int normalizedIdx = normalized.length();
+            normalized.append(c, i);
+
+            boolean isDigit = c >= '0' && c <= '9';
+            boolean isLetter = mode == MODE_ALPHANUMERIC
+                    && ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'));
+            if (isDigit || isLetter) {
+                extendRun(originalOut, i, isDigit);
+                extendRun(normalizedOut, normalizedIdx, isDigit);
+            } else {
+                endRun(originalOut, i, null);
+                endRun(normalizedOut, normalizedIdx, normalized);
+            }
+        }
+        endRun(originalOut, len, null);
+        endRun(normalizedOut, normalized.length(), normalized);
+    }
+
+    private static void extendRun(Candidates out, int index, boolean isDigit) {
+        if (out.mRunStart < 0) {
+            out.mRunStart = index;
+            out.mRunDigits = 0;
+            out.mRunLetters = 0;
+        }
+        if (isDigit) {
+            out.mRunDigits++;
+        } else {
+            out.mRunLetters++;
+        }
+    }
+
+    /**
+     * End the current run at end (exclusive), and add it if it's a candidate.
+     *
+     * @param offsets offset map to the original text, null if the run is in the original text.
+     */
+    private static void endRun(Candidates out, int end, NormalizedText offsets) {
+        final int runStart = out.mRunStart;
+        if (runStart < 0) {
+            return;
+        }
+        out.mRunStart = -1;
+        final int runLength = end - runStart;
+        if (runLength >= MIN_CODE_LENGTH && runLength <= MAX_CODE_LENGTH) {
+            int level = matchLevel(runLength, out.mRunDigits, out.mRunLetters);
+            if (offsets == null) {
+                out.add(runStart, runLength, level, runStart, end);
+            } else {
+                out.add(runStart, runLength, level,
+                        offsets.originalOffset(runStart), offsets.originalOffset(end - 1) + 1);
+            }
+        }
+    }
+
+    private static int matchLevel(int length, int digits, int letters) {
+        if (digits == length) {
+            if (length == 6)
+                return LEVEL_DIGITAL_6;
+            if (length == 4)
+                return LEVEL_DIGITAL_4;
+            return LEVEL_DIGITAL_OTHERS;
+        }
+        if (letters == length)
+            return LEVEL_CHARACTER;
+        return LEVEL_TEXT;
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.Arrays;
+
+/**
+ * SMS code candidate spans found by {@link CandidateLexer}.<br>
+ * Start and length are in the view the candidate is found in, and the original start and end
+ * are the [start, end) offsets of the candidate in the original text.
+ */
+final class Candidates {
+
+    private int[] mStarts;
+    private int[] mLengths;
+    private int[] mLevels;
+    private int[] mOriginalStarts;
+    private int[] mOriginalEnds;
+    private int mSize;
+
+    // state of the run which is being lexed
+    int mRunStart;
+    int mRunDigits;
+    int mRunLetters;
+
+    Candidates() {
+        mStarts = new int[8];
+        mLengths = new int[8];
+        mLevels = new int[8];
+        mOriginalStarts = new int[8];
+        mOriginalEnds = new int[8];
+    }
+
+    void add(int start, int length, int level, int originalStart, int originalEnd) {
+        if (mSize == mStarts.length) {
+            int newCapacity = mSize * 2;
+            mStarts = Arrays.copyOf(mStarts, newCapacity);
+            mLengths = Arrays.copyOf(mLengths, newCapacity);
+            mLevels = Arrays.copyOf(mLevels, newCapacity);
+            mOriginalStarts = Arrays.copyOf(mOriginalStarts, newCapacity);
+            mOriginalEnds = Arrays.copyOf(mOriginalEnds, newCapacity);
+        }
+        mStarts[mSize] = start;
+        mLengths[mSize] = length;
+        mLevels[mSize] = level;
+        mOriginalStarts[mSize] = originalStart;
+        mOriginalEnds[mSize] = originalEnd;
+        mSize++;
+    }
+
+    void clear() {
+        mSize = 0;
+        mRunStart = -1;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int start(int index) {
+        return mStarts[index];
+    }
+
+    int length(int index) {
+        return mLengths[index];
+    }
+
+    int level(int index) {
+        return mLevels[index];
+    }
+
+    int originalStart(int index) {
+        return mOriginalStarts[index];
+    }
+
+    int originalEnd(int index) {
+        return mOriginalEnds[index];
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Custom SMS code rule.
+ */
+public interface CodeRule {
+
+    /**
+     * id, or null if the rule is not persisted
+     */
+    Long getId();
+
+    /**
+     * company or organization name
+     */
+    String getCompany();
+
+    /**
+     * verification code keyword
+     */
+    String getCodeKeyword();
+
+    /**
+     * verification code regex
+     */
+    String getCodeRegex();
+
+    /**
+     * how many times the rule has extracted SMS code, null if it has never been counted
+     */
+    Integer getHitCount();
+}
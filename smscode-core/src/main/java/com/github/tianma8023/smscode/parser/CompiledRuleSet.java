@@ -0,0 +1,350 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable set of custom rules whose company and keyword are lowercased and whose regex is
+ * compiled in advance.<br>
+ * Changes are applied incrementally by copy-on-write, only the changed rules are compiled again.<br>
+ * All company and keyword literals are indexed by one Aho-Corasick automaton, so a single pass
+ * over the message finds the rules whose company and keyword both appear, and only their
+ * regexes are evaluated.<br>
+ * Candidates are evaluated by hit count descending, then by rule order, so the rules which
+ * fire frequently are tried first.
+ */
+public final class CompiledRuleSet {
+
+    private static final CompiledRuleSet EMPTY = new CompiledRuleSet(new CompiledRule[0]);
+
+    static final class CompiledRule {
+        final Long mId;
+        final String mLowerCompany;
+        final String mLowerKeyword;
+        // null if the code regex is invalid
+        final Pattern mCodePattern;
+        final AtomicInteger mHitCount;
+
+        CompiledRule(CodeRule rule) {
+            mId = rule.getId();
+            mLowerCompany = rule.getCompany() == null ? "" : rule.getCompany().toLowerCase();
+            mLowerKeyword = rule.getCodeKeyword().toLowerCase();
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(rule.getCodeRegex());
+            } catch (PatternSyntaxException e) {
+                pattern = null;
+            }
+            mCodePattern = pattern;
+            Integer hitCount = rule.getHitCount();
+            mHitCount = new AtomicInteger(hitCount == null ? 0 : hitCount);
+        }
+    }
+
+    private static final int NO_LITERAL = -1;
+
+    private final CompiledRule[] mRules;
+
+    // literal index of the company and the keyword of each rule, NO_LITERAL if it's empty
+    private final int[] mCompanyLiterals;
+    private final int[] mKeywordLiterals;
+    // rules which refer to each literal
+    private final int[][] mLiteralRules;
+    // rules whose company and keyword are both empty, they are always candidates
+    private final int[] mUnconditionalRules;
+    // null if there is no literal
+    private final AhoCorasick mAutomaton;
+    private final ThreadLocal<Scratch> mScratch;
+
+    /**
+     * Per-thread stamps, so that a scan costs nothing for the rules which are not hit.
+     */
+    private static final class Scratch {
+        int mStamp;
+        final int[] mLiteralStamps;
+        final int[] mRuleStamps;
+        int[] mCandidates = new int[8];
+        int[] mCandidateHits = new int[8];
+        int mCandidateCount;
+
+        Scratch(int literalCount, int ruleCount) {
+            mLiteralStamps = new int[literalCount];
+            mRuleStamps = new int[ruleCount];
+        }
+
+        int nextStamp() {
+            if (++mStamp == 0) { // overflow
+                Arrays.fill(mLiteralStamps, 0);
+                Arrays.fill(mRuleStamps, 0);
+                mStamp = 1;
+            }
+            mCandidateCount = 0;
+            return mStamp;
+        }
+
+        void addCandidate(int rule) {
+            if (mCandidateCount == mCandidates.length) {
+                mCandidates = Arrays.copyOf(mCandidates, mCandidateCount * 2);
+                mCandidateHits = Arrays.copyOf(mCandidateHits, mCandidateCount * 2);
+            }
+            mCandidates[mCandidateCount++] = rule;
+        }
+    }
+
+    private CompiledRuleSet(CompiledRule[] rules) {
+        mRules = rules;
+        mCompanyLiterals = new int[rules.length];
+        mKeywordLiterals = new int[rules.length];
+
+        Map<String, Integer> literalIndexes = new HashMap<>();
+        List<String> literals = new ArrayList<>();
+        List<List<Integer>> literalRules = new ArrayList<>();
+        List<Integer> unconditionalRules = new ArrayList<>();
+        for (int i = 0; i < rules.length; i++) {
+            mCompanyLiterals[i] = indexLiteral(rules[i].mLowerCompany, i,
+                    literalIndexes, literals, literalRules);
+            mKeywordLiterals[i] = indexLiteral(rules[i].mLowerKeyword, i,
+                    literalIndexes, literals, literalRules);
+            if (mCompanyLiterals[i] == NO_LITERAL && mKeywordLiterals[i] == NO_LITERAL) {
+                unconditionalRules.add(i);
+            }
+        }
+
+        mLiteralRules = new int[literals.size()][];
+        for (int i = 0; i < mLiteralRules.length; i++) {
+            mLiteralRules[i] = toIntArray(literalRules.get(i));
+        }
+        mUnconditionalRules = toIntArray(unconditionalRules);
+        mAutomaton = literals.isEmpty() ? null : new AhoCorasick(literals.toArray(new String[0]));
+        final int literalCount = literals.size();
+        final int ruleCount = rules.length;
+        mScratch = new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue() {
+                return new Scratch(literalCount, ruleCount);
+            }
+        };
+    }
+
+    private static int indexLiteral(String literal, int rule, Map<String, Integer> literalIndexes,
+                                    List<String> literals, List<List<Integer>> literalRules) {
+        if (literal.isEmpty()) {
+            return NO_LITERAL;
+        }
+        Integer idx = literalIndexes.get(literal);
+        if (idx == null) {
+            idx = literals.size();
+            literalIndexes.put(literal, idx);
+            literals.add(literal);
+            literalRules.add(new ArrayList<>());
+        }
+        List<Integer> rules = literalRules.get(idx);
+        // company and keyword of a rule may be the same literal
+        if (rules.isEmpty() || rules.get(rules.size() - 1) != rule) {
+            rules.add(rule);
+        }
+        return idx;
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    public static CompiledRuleSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Compile the rules, the evaluation order is the same as the list order.
+     */
+    public static CompiledRuleSet compile(List<? extends CodeRule> rules) {
+        CompiledRule[] compiledRules = new CompiledRule[rules.size()];
+        for (int i = 0; i < compiledRules.length; i++) {
+            compiledRules[i] = new CompiledRule(rules.get(i));
+        }
+        return new CompiledRuleSet(compiledRules);
+    }
+
+    public int size() {
+        return mRules.length;
+    }
+
+    /**
+     * Return a new rule set with the rules added, or replaced if rules with the same id exist.
+     */
+    public CompiledRuleSet withRules(Collection<? extends CodeRule> rules) {
+        List<CompiledRule> result = new ArrayList<>(Arrays.asList(mRules));
+        for (CodeRule rule : rules) {
+            CompiledRule compiledRule = new CompiledRule(rule);
+            int idx = indexOf(result, rule.getId());
+            if (idx >= 0) {
+                // the updated rule may carry stale statistics
+                CompiledRule oldRule = result.get(idx);
+                if (oldRule.mHitCount.get() > compiledRule.mHitCount.get()) {
+                    compiledRule.mHitCount.set(oldRule.mHitCount.get());
+                }
+                result.set(idx, compiledRule);
+            } else {
+                result.add(compiledRule);
+            }
+        }
+        return new CompiledRuleSet(result.toArray(new CompiledRule[0]));
+    }
+
+    /**
+     * Return a new rule set without the rules.
+     */
+    public CompiledRuleSet withoutRules(Collection<? extends CodeRule> rules) {
+        List<CompiledRule> result = new ArrayList<>(Arrays.asList(mRules));
+        for (CodeRule rule : rules) {
+            int idx = indexOf(result, rule.getId());
+            if (idx >= 0) {
+                result.remove(idx);
+            }
+        }
+        return new CompiledRuleSet(result.toArray(new CompiledRule[0]));
+    }
+
+    private static int indexOf(List<CompiledRule> rules, Long id) {
+        if (id == null) {
+            return -1;
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            if (id.equals(rules.get(i).mId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse SMS code by custom rules
+     *
+     * @param content message body
+     * @return the SMS code if matches, otherwise return empty string
+     */
+    public String match(String content) {
+        return match(content, null);
+    }
+
+    /**
+     * Parse SMS code by custom rules
+     *
+     * @param content  message body
+     * @param listener notified with the rule which extracted the SMS code, nullable
+     * @return the SMS code if matches, otherwise return empty string
+     */
+    public String match(String content, RuleHitListener listener) {
+        return match(content, listener, true);
+    }
+
+    /**
+     * Same as {@link #match(String)}, but the hit isn't counted, for trial parsing.
+     */
+    public String matchWithoutHit(String content) {
+        return match(content, null, false);
+    }
+
+    private String match(String content, RuleHitListener listener, boolean countHit) {
+        if (mRules.length == 0) {
+            return "";
+        }
+        Scratch scratch = mScratch.get();
+        final int stamp = scratch.nextStamp();
+        for (int rule : mUnconditionalRules) {
+            scratch.mRuleStamps[rule] = stamp;
+            scratch.addCandidate(rule);
+        }
+        if (mAutomaton != null) {
+            collectCandidates(content.toLowerCase(), scratch, stamp);
+        }
+
+        // evaluate the frequently hit candidates first, the first match wins
+        final int[] candidates = scratch.mCandidates;
+        final int candidateCount = scratch.mCandidateCount;
+        sortCandidates(candidates, scratch.mCandidateHits, candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            CompiledRule rule = mRules[candidates[i]];
+            if (rule.mCodePattern != null) {
+                Matcher matcher = rule.mCodePattern.matcher(content);
+                if (matcher.find()) {
+                    if (countHit) {
+                        rule.mHitCount.incrementAndGet();
+                        if (listener != null) {
+                            listener.onRuleHit(rule.mId);
+                        }
+                    }
+                    return matcher.group();
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Sort the candidates by hit count descending, then by rule order.
+     * There are only a few candidates, so insertion sort is enough.
+     */
+    private void sortCandidates(int[] candidates, int[] hits, int count) {
+        // snapshot the hit counts, they may be changed by other threads
+        for (int i = 0; i < count; i++) {
+            hits[i] = mRules[candidates[i]].mHitCount.get();
+        }
+        for (int i = 1; i < count; i++) {
+            int candidate = candidates[i];
+            int hit = hits[i];
+            int j = i - 1;
+            while (j >= 0 && (hits[j] < hit || (hits[j] == hit && candidates[j] > candidate))) {
+                candidates[j + 1] = candidates[j];
+                hits[j + 1] = hits[j];
+                j--;
+            }
+            candidates[j + 1] = candidate;
+            hits[j + 1] = hit;
+        }
+    }
+
+    /**
+     * Scan the lowercased content once, and collect the rules whose company and keyword
+     * both appear.
+     */
+    private void collectCandidates(String lowerContent, Scratch scratch, int stamp) {
+        final int[] literalStamps = scratch.mLiteralStamps;
+        final int[] ruleStamps = scratch.mRuleStamps;
+        int state = AhoCorasick.ROOT;
+        for (int i = 0; i < lowerContent.length(); i++) {
+            state = mAutomaton.nextState(state, lowerContent.charAt(i));
+            for (int s = state; s != AhoCorasick.NONE; s = mAutomaton.dictLink(s)) {
+                int literal = mAutomaton.output(s);
+                if (literal == AhoCorasick.NONE || literalStamps[literal] == stamp) {
+                    continue;
+                }
+                literalStamps[literal] = stamp;
+                for (int rule : mLiteralRules[literal]) {
+                    if (ruleStamps[rule] != stamp
+                            && isLiteralHit(mCompanyLiterals[rule], literalStamps, stamp)
+                            && isLiteralHit(mKeywordLiterals[rule], literalStamps, stamp)) {
+                        ruleStamps[rule] = stamp;
+                        scratch.addCandidate(rule);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isLiteralHit(int literal, int[] literalStamps, int stamp) {
+        return literal == NO_LITERAL || literalStamps[literal] == stamp;
+    }
+}
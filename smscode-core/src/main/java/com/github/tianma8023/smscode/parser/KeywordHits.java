@@ -0,0 +1,55 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.Arrays;
+
+/**
+ * Keyword hits in a text, each hit is the [start, end) offsets of a keyword.
+ */
+public final class KeywordHits {
+
+    private int[] mStarts;
+    private int[] mEnds;
+    private int mSize;
+
+    KeywordHits() {
+        mStarts = new int[4];
+        mEnds = new int[4];
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+
+    void add(int start, int end) {
+        if (mSize == mStarts.length) {
+            mStarts = Arrays.copyOf(mStarts, mSize * 2);
+            mEnds = Arrays.copyOf(mEnds, mSize * 2);
+        }
+        // hits are reported in ascending end order, insert by start offset
+        int i = mSize - 1;
+        while (i >= 0 && mStarts[i] > start) {
+            mStarts[i + 1] = mStarts[i];
+            mEnds[i + 1] = mEnds[i];
+            i--;
+        }
+        mStarts[i + 1] = start;
+        mEnds[i + 1] = end;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int start(int index) {
+        return mStarts[index];
+    }
+
+    public int end(int index) {
+        return mEnds[index];
+    }
+}
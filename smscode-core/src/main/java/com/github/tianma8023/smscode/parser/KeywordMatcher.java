@@ -0,0 +1,82 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matcher for SMS code keywords.<br>
+ * Keywords which are plain literals separated by <code>|</code> are matched by an Aho-Corasick
+ * automaton in one linear pass, otherwise the keywords are treated as a regular expression.
+ */
+public abstract class KeywordMatcher {
+
+    private static final String REGEX_META_CHARS = "\\^$.?*+()[]{}";
+
+    /**
+     * Build a keyword matcher from the keywords regular expression.
+     *
+     * @param keywordsRegex keywords regex, such as "验证码|code"
+     * @throws java.util.regex.PatternSyntaxException if keywordsRegex is an invalid regex
+     */
+    public static KeywordMatcher compile(String keywordsRegex) {
+        List<String> literals = splitLiterals(keywordsRegex);
+        if (literals != null) {
+            return new AhoCorasickKeywordMatcher(literals.toArray(new String[0]));
+        }
+        return new RegexKeywordMatcher(keywordsRegex);
+    }
+
+    /**
+     * Split keywords regex into literal keywords.
+     *
+     * @return literal keywords, or null if the keywords regex contains real regex syntax.
+     */
+    static List<String> splitLiterals(String keywordsRegex) {
+        if (keywordsRegex == null || keywordsRegex.isEmpty()) {
+            return null;
+        }
+        List<String> literals = new ArrayList<>();
+        int start = 0;
+        final int len = keywordsRegex.length();
+        for (int i = 0; i <= len; i++) {
+            if (i == len || keywordsRegex.charAt(i) == '|') {
+                if (i == start) { // empty alternative matches everything
+                    return null;
+                }
+                literals.add(keywordsRegex.substring(start, i));
+                start = i + 1;
+            } else if (REGEX_META_CHARS.indexOf(keywordsRegex.charAt(i)) >= 0) {
+                return null;
+            }
+        }
+        return literals;
+    }
+
+    /**
+     * Whether the text contains any keyword.
+     */
+    public abstract boolean containsAny(CharSequence text);
+
+    /**
+     * Find the first keyword in the text, same as the first match of the keywords regex.
+     *
+     * @return the first keyword, or empty string if not found.
+     */
+    public abstract String findFirst(CharSequence text);
+
+    /**
+     * Find all keyword hits in the text.
+     *
+     * @return keyword hits sorted by start offset.
+     */
+    public KeywordHits findAll(CharSequence text) {
+        KeywordHits hits = new KeywordHits();
+        findAll(text, hits);
+        return hits;
+    }
+
+    /**
+     * Find all keyword hits in the text into the reusable holder.
+     */
+    abstract void findAll(CharSequence text, KeywordHits out);
+}
@@ -0,0 +1,12 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Source of the SMS code keywords.
+ */
+public interface KeywordSource {
+
+    /**
+     * @return SMS code keywords regular expression, such as "验证码|code"
+     */
+    String getKeywords();
+}
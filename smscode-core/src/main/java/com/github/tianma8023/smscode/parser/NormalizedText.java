@@ -0,0 +1,82 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.Arrays;
+
+/**
+ * Reusable view of a text with all white spaces removed.<br>
+ * It keeps the offset of every char in the original text, so positions found in this view can
+ * be mapped back to the original text.
+ */
+final class NormalizedText implements CharSequence {
+
+    private char[] mChars;
+    private int[] mOffsets;
+    private int mLength;
+
+    NormalizedText() {
+        mChars = new char[256];
+        mOffsets = new int[256];
+    }
+
+    /**
+     * Same as <code>\s</code> in regex.
+     */
+    static boolean isWhiteSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    void reset(int capacity) {
+        if (mChars.length < capacity) {
+            mChars = new char[capacity];
+            mOffsets = new int[capacity];
+        }
+        mLength = 0;
+    }
+
+    void append(char c, int originalOffset) {
+        if (mLength == mChars.length) {
+            mChars = Arrays.copyOf(mChars, mLength * 2);
+            mOffsets = Arrays.copyOf(mOffsets, mLength * 2);
+        }
+        mChars[mLength] = c;
+        mOffsets[mLength] = originalOffset;
+        mLength++;
+    }
+
+    /**
+     * The offset in the original text of the char at index.
+     */
+    int originalOffset(int index) {
+        return mOffsets[index];
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= mLength) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + mLength);
+        }
+        return mChars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString(start, end);
+    }
+
+    String toString(int start, int end) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + mLength);
+        }
+        return new String(mChars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+}
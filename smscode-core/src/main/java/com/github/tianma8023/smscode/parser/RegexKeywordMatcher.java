@@ -0,0 +1,41 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keyword matcher for keywords which contain real regex syntax.
+ */
+final class RegexKeywordMatcher extends KeywordMatcher {
+
+    private final Pattern mPattern;
+
+    RegexKeywordMatcher(String keywordsRegex) {
+        mPattern = Pattern.compile(keywordsRegex);
+    }
+
+    @Override
+    public boolean containsAny(CharSequence text) {
+        return mPattern.matcher(text).find();
+    }
+
+    @Override
+    public String findFirst(CharSequence text) {
+        Matcher matcher = mPattern.matcher(text);
+        if (matcher.find()) {
+            return matcher.group();
+        }
+        return "";
+    }
+
+    @Override
+    void findAll(CharSequence text, KeywordHits hits) {
+        hits.clear();
+        Matcher matcher = mPattern.matcher(text);
+        while (matcher.find()) {
+            if (matcher.end() > matcher.start()) {
+                hits.add(matcher.start(), matcher.end());
+            }
+        }
+    }
+}
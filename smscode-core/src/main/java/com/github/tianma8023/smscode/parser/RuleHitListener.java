@@ -0,0 +1,12 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Listener of the custom rule hits, used to persist the hit statistics.
+ */
+public interface RuleHitListener {
+
+    /**
+     * @param ruleId id of the rule which extracted the SMS code, null if the rule is not persisted
+     */
+    void onRuleHit(Long ruleId);
+}
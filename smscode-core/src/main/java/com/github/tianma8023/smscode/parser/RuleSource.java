@@ -0,0 +1,14 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.List;
+
+/**
+ * Source of the custom SMS code rules.
+ */
+public interface RuleSource {
+
+    /**
+     * @return all custom rules, in evaluation order.
+     */
+    List<? extends CodeRule> loadRules();
+}
@@ -0,0 +1,138 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import java.util.Collection;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * SMS code extraction engine: custom rules first, then the default rule.<br>
+ * Keywords and rules are provided by the platform through {@link KeywordSource}
+ * and {@link RuleSource}, so the engine can run on a plain JVM.
+ */
+public final class SmsCodeExtractor {
+
+    private final KeywordSource mKeywordSource;
+    private final RuleSource mRuleSource;
+
+    private volatile SmsCodeParser mParser;
+    private volatile CompiledRuleSet mRuleSet;
+    private volatile RuleHitListener mRuleHitListener;
+
+    public SmsCodeExtractor(KeywordSource keywordSource, RuleSource ruleSource) {
+        mKeywordSource = keywordSource;
+        mRuleSource = ruleSource;
+    }
+
+    /**
+     * Set the listener of custom rule hits, nullable.
+     */
+    public void setRuleHitListener(RuleHitListener listener) {
+        mRuleHitListener = listener;
+    }
+
+    /**
+     * Get the default rule parser, it's built from the keyword source lazily.
+     */
+    public SmsCodeParser getParser() {
+        SmsCodeParser parser = mParser;
+        if (parser == null) {
+            synchronized (this) {
+                parser = mParser;
+                if (parser == null) {
+                    parser = mParser = buildParser(mKeywordSource.getKeywords());
+                }
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Rebuild the default rule parser from the keyword source lazily.<br>
+     * The parser is reset under the lock which guards building it,
+     * so a parser being built from the old keywords can't be published after the reset.
+     */
+    public synchronized void onKeywordsChanged() {
+        mParser = null;
+    }
+
+    private static SmsCodeParser buildParser(String keywordsRegex) {
+        try {
+            return new SmsCodeParser(keywordsRegex);
+        } catch (PatternSyntaxException e) {
+            // invalid keywords, fallback to default
+            return new SmsCodeParser(SmsCodeConst.VERIFICATION_KEYWORDS_REGEX);
+        }
+    }
+
+    /**
+     * Get the compiled custom rules, they are loaded from the rule source only once.
+     */
+    public CompiledRuleSet getRuleSet() {
+        CompiledRuleSet ruleSet = mRuleSet;
+        if (ruleSet == null) {
+            synchronized (this) {
+                ruleSet = mRuleSet;
+                if (ruleSet == null) {
+                    ruleSet = mRuleSet = CompiledRuleSet.compile(mRuleSource.loadRules());
+                }
+            }
+        }
+        return ruleSet;
+    }
+
+    /**
+     * Apply added or updated rules to the compiled custom rules.
+     */
+    public synchronized void onRulesAddedOrUpdated(Collection<? extends CodeRule> rules) {
+        if (mRuleSet != null) {
+            mRuleSet = mRuleSet.withRules(rules);
+        }
+    }
+
+    /**
+     * Apply removed rules to the compiled custom rules.
+     */
+    public synchronized void onRulesRemoved(Collection<? extends CodeRule> rules) {
+        if (mRuleSet != null) {
+            mRuleSet = mRuleSet.withoutRules(rules);
+        }
+    }
+
+    /**
+     * Reload the custom rules from the rule source lazily.
+     */
+    public synchronized void onRulesChanged() {
+        mRuleSet = null;
+    }
+
+    /**
+     * 解析文本中的验证码并返回，如果不存在返回空字符
+     */
+    public String extract(String content) {
+        String result = getRuleSet().match(content, mRuleHitListener);
+        if (result.isEmpty()) {
+            result = getParser().parse(content);
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #extract(String)}, but the custom rule hits aren't counted or reported,
+     * so trial parsing doesn't change the rule statistics.
+     */
+    public String extractWithoutHit(String content) {
+        String result = getRuleSet().matchWithoutHit(content);
+        if (result.isEmpty()) {
+            result = getParser().parse(content);
+        }
+        return result;
+    }
+
+    /**
+     * 是否包含验证码短信关键字
+     */
+    public boolean containsCodeKeywords(String content) {
+        return getParser().containsCodeKeywords(content);
+    }
+}
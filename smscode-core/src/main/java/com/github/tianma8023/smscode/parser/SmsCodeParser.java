@@ -0,0 +1,262 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable SMS code parser which holds all compiled patterns.<br>
+ * It is built once from the keywords regex and can be shared between threads.
+ */
+public final class SmsCodeParser {
+
+    private static final Pattern CHINESE_PATTERN = Pattern.compile("[\u4e00-\u9fa5]|。");
+
+    private static final Pattern COMPANY_PATTERN =
+            Pattern.compile("((?<=【)(.*?)(?=】))|((?<=\\[)(.*?)(?=\\]))");
+
+    private static final Pattern PHONE_NUMBER_KEYWORDS_PATTERN =
+            Pattern.compile(SmsCodeConst.PHONE_NUMBER_KEYWORDS);
+
+    private static final Pattern POSSIBLE_PHONE_NUMBER_PATTERN = Pattern.compile("\\d{8,}");
+
+    /* 验证码与关键字的最大距离，超出此距离则认为不靠近关键字 */
+    private static final int NEAR_DISTANCE = 30;
+
+    /**
+     * Per-thread reusable buffers, so that parsing allocates only the result.
+     */
+    private static final class Scratch {
+        final NormalizedText mNormalized = new NormalizedText();
+        final Candidates mOriginalCandidates = new Candidates();
+        final Candidates mNormalizedCandidates = new Candidates();
+        final KeywordHits mKeywordHits = new KeywordHits();
+    }
+
+    private static final ThreadLocal<Scratch> sScratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final String mKeywordsRegex;
+    private final KeywordMatcher mKeywordMatcher;
+
+    /**
+     * @param keywordsRegex SMS code keywords regular expression
+     * @throws java.util.regex.PatternSyntaxException if keywordsRegex is invalid
+     */
+    public SmsCodeParser(String keywordsRegex) {
+        mKeywordsRegex = keywordsRegex;
+        mKeywordMatcher = KeywordMatcher.compile(keywordsRegex);
+    }
+
+    /**
+     * The keywords regex which this parser is built from.
+     */
+    public String getKeywordsRegex() {
+        return mKeywordsRegex;
+    }
+
+    /**
+     * 是否包含验证码短信关键字
+     *
+     * @param content content
+     */
+    public boolean containsCodeKeywords(String content) {
+        return mKeywordMatcher.containsAny(content);
+    }
+
+    /**
+     * Parse SMS code by default rule
+     *
+     * @param content message body
+     * @return the SMS code if matches, otherwise return empty string
+     */
+    public String parse(String content) {
+        Scratch scratch = sScratch.get();
+        KeywordHits keywordHits = scratch.mKeywordHits;
+        mKeywordMatcher.findAll(content, keywordHits);
+        if (keywordHits.isEmpty()) {
+            return "";
+        }
+
+        final boolean isChinese = containsChinese(content);
+        final int mode = isChinese ? CandidateLexer.MODE_ALPHANUMERIC : CandidateLexer.MODE_DIGITAL;
+        NormalizedText normalized = scratch.mNormalized;
+        Candidates originalCandidates = scratch.mOriginalCandidates;
+        Candidates normalizedCandidates = scratch.mNormalizedCandidates;
+        // lex the original text and the white-space-free view in one pass
+        CandidateLexer.lex(content, mode, originalCandidates, normalized, normalizedCandidates);
+
+        final int length = content.length();
+        if (isChinese) {
+            // 中文短信: 先去掉所有空白字符处理, 没解析出就按照原文本再处理一遍
+            int idx = pickSmsCode(keywordHits, normalizedCandidates, length);
+            if (idx >= 0) {
+                return normalized.toString(normalizedCandidates.start(idx),
+                        normalizedCandidates.start(idx) + normalizedCandidates.length(idx));
+            }
+            idx = pickSmsCode(keywordHits, originalCandidates, length);
+            if (idx >= 0) {
+                return content.substring(originalCandidates.originalStart(idx),
+                        originalCandidates.originalEnd(idx));
+            }
+        } else {
+            // 英文短信: 先按照原文本处理, 没解析出就去掉所有空白字符再处理
+            int idx = pickSmsCode(keywordHits, originalCandidates, length);
+            if (idx >= 0) {
+                return content.substring(originalCandidates.originalStart(idx),
+                        originalCandidates.originalEnd(idx));
+            }
+            idx = pickSmsCode(keywordHits, normalizedCandidates, length);
+            if (idx >= 0) {
+                return normalized.toString(normalizedCandidates.start(idx),
+                        normalizedCandidates.start(idx) + normalizedCandidates.length(idx));
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 是否包含中文
+     *
+     * @param text text
+     */
+    private static boolean containsChinese(String text) {
+        return CHINESE_PATTERN.matcher(text).find();
+    }
+
+    /*
+     * Pick the SMS code from candidates.<br>
+     * Both keyword hits and candidates are sorted by their offsets in the original text,
+     * so the nearest keyword of every candidate is found by merging them in one pass.
+     *
+     * @param keywordHits   keyword hits in the original text
+     * @param candidates    candidates
+     * @param contentLength length of the original text
+     * @return the index of SMS code in candidates if it's found, otherwise return -1
+     */
+    private static int pickSmsCode(KeywordHits keywordHits, Candidates candidates, int contentLength) {
+        final int size = candidates.size();
+        if (size == 0) { // no possible code
+            return -1;
+        }
+
+        boolean anyNear = false;
+        int hitIdx = 0;
+        for (int i = 0; i < size && !anyNear; i++) {
+            hitIdx = firstHitFrom(keywordHits, hitIdx,
+                    candidates.originalStart(i) - NEAR_DISTANCE);
+            anyNear = isNearToKeyword(keywordHits, hitIdx,
+                    candidates.originalEnd(i) + NEAR_DISTANCE);
+        }
+
+        int maxMatchLevel = CandidateLexer.LEVEL_NONE;
+        // minimum distance for possible code to keyword
+        int minDistance = contentLength;
+        int smsCodeIdx = -1;
+        int nearHitIdx = 0;
+        int nearestHitIdx = 0;
+        for (int i = 0; i < size; i++) {
+            final int codeStart = candidates.originalStart(i);
+            if (anyNear) {
+                nearHitIdx = firstHitFrom(keywordHits, nearHitIdx, codeStart - NEAR_DISTANCE);
+                if (!isNearToKeyword(keywordHits, nearHitIdx,
+                        candidates.originalEnd(i) + NEAR_DISTANCE)) {
+                    // only the possible codes near to keywords are taken into account
+                    continue;
+                }
+            }
+            nearestHitIdx = firstHitFrom(keywordHits, nearestHitIdx, codeStart);
+            final int curDistance = distanceToKeyword(keywordHits, nearestHitIdx, codeStart);
+            final int curLevel = candidates.level(i);
+            if (curLevel > maxMatchLevel) {
+                maxMatchLevel = curLevel;
+                // reset the minDistance
+                minDistance = curDistance;
+                smsCodeIdx = i;
+            } else if (curLevel == maxMatchLevel) {
+                if (curDistance < minDistance) {
+                    minDistance = curDistance;
+                    smsCodeIdx = i;
+                }
+            }
+        }
+        return smsCodeIdx;
+    }
+
+    /**
+     * The index of the first keyword hit whose start offset is not less than offset,
+     * searching from fromIdx. Returns hits size if there is no such hit.
+     */
+    private static int firstHitFrom(KeywordHits keywordHits, int fromIdx, int offset) {
+        int idx = fromIdx;
+        while (idx < keywordHits.size() && keywordHits.start(idx) < offset) {
+            idx++;
+        }
+        return idx;
+    }
+
+    /**
+     * 可能的验证码是否靠近关键字: whether there is a keyword hit in [windowStart, windowEnd).
+     *
+     * @param hitIdx    the index of the first hit which starts after windowStart.
+     * @param windowEnd the end offset of the window
+     */
+    private static boolean isNearToKeyword(KeywordHits keywordHits, int hitIdx, int windowEnd) {
+        for (int i = hitIdx; i < keywordHits.size() && keywordHits.start(i) < windowEnd; i++) {
+            if (keywordHits.end(i) <= windowEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 计算可能的验证码与最近的关键字的距离
+     *
+     * @param hitIdx the index of the first hit which starts after codeStart.
+     */
+    private static int distanceToKeyword(KeywordHits keywordHits, int hitIdx, int codeStart) {
+        int distance = Integer.MAX_VALUE;
+        if (hitIdx < keywordHits.size()) {
+            distance = keywordHits.start(hitIdx) - codeStart;
+        }
+        if (hitIdx > 0) {
+            distance = Math.min(distance, codeStart - keywordHits.start(hitIdx - 1));
+        }
+        return distance;
+    }
+
+    public static boolean isPossiblePhoneNumber(String text) {
+        return POSSIBLE_PHONE_NUMBER_PATTERN.matcher(text).matches();
+    }
+
+    public static boolean containsPhoneNumberKeywords(String content) {
+        return PHONE_NUMBER_KEYWORDS_PATTERN.matcher(content).find();
+    }
+
+    /**
+     * Parse company info from message content if it exists
+     *
+     * @param content message content
+     * @return company info if it exists, otherwise return empty string
+     */
+    public static String parseCompany(String content) {
+        Matcher matcher = COMPANY_PATTERN.matcher(content);
+        StringBuilder sb = new StringBuilder();
+        boolean needBlank = false; // 是否需要空格分隔
+        while (matcher.find()) {
+            if (needBlank) {
+                sb.append(' ');
+            } else {
+                needBlank = true;
+            }
+            sb.append(matcher.group());
+        }
+        return sb.toString();
+    }
+}
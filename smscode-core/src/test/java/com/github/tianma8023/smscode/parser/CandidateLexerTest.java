@@ -0,0 +1,108 @@
+package com.github.tianma8023.smscode.parser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class CandidateLexerTest {
+
+    private static final Pattern ALPHANUMERIC_PATTERN =
+            Pattern.compile("(?<![a-zA-Z0-9])[a-zA-Z0-9]{4,8}(?![a-zA-Z0-9])");
+    private static final Pattern DIGITAL_PATTERN =
+            Pattern.compile("(?<![0-9])[0-9]{4,8}(?![0-9])");
+
+    private static final String[] TEXTS = {
+            "",
+            "123",
+            "1234",
+            "123456789",
+            "验证码 A7K2Q9，有效期 15 分钟",
+            "验证码 91 83 27，请勿泄露",
+            "abc1234def 12345678 1234567890 ab-cd12-3456",
+            "Use code 90 21 45 to sign in. Ref 20231017.",
+            "\t4321\n8765 ",
+    };
+
+    private final Candidates mOriginal = new Candidates();
+    private final NormalizedText mNormalized = new NormalizedText();
+    private final Candidates mNormalizedCandidates = new Candidates();
+
+    @Test
+    public void sameAsRegexAlphanumeric() {
+        for (String text : TEXTS) {
+            assertSameAsRegex(text, CandidateLexer.MODE_ALPHANUMERIC, ALPHANUMERIC_PATTERN);
+        }
+    }
+
+    @Test
+    public void sameAsRegexDigital() {
+        for (String text : TEXTS) {
+            assertSameAsRegex(text, CandidateLexer.MODE_DIGITAL, DIGITAL_PATTERN);
+        }
+    }
+
+    private void assertSameAsRegex(String text, int mode, Pattern pattern) {
+        CandidateLexer.lex(text, mode, mOriginal, mNormalized, mNormalizedCandidates);
+        String normalized = text.replaceAll("\\s*", "");
+        assertEquals(text, normalized, mNormalized.toString());
+        assertEquals(text, find(pattern, text), originalCandidates(text));
+        assertEquals(text, find(pattern, normalized), normalizedCandidates());
+    }
+
+    @Test
+    public void levels() {
+        CandidateLexer.lex("123456 1234 12345 ab12 abcd", CandidateLexer.MODE_ALPHANUMERIC,
+                mOriginal, mNormalized, mNormalizedCandidates);
+        assertEquals(5, mOriginal.size());
+        assertEquals(CandidateLexer.LEVEL_DIGITAL_6, mOriginal.level(0));
+        assertEquals(CandidateLexer.LEVEL_DIGITAL_4, mOriginal.level(1));
+        assertEquals(CandidateLexer.LEVEL_DIGITAL_OTHERS, mOriginal.level(2));
+        assertEquals(CandidateLexer.LEVEL_TEXT, mOriginal.level(3));
+        assertEquals(CandidateLexer.LEVEL_CHARACTER, mOriginal.level(4));
+    }
+
+    @Test
+    public void normalizedCandidateOriginalSpan() {
+        String text = "验证码 91 83 27，请勿泄露";
+        CandidateLexer.lex(text, CandidateLexer.MODE_ALPHANUMERIC, mOriginal, mNormalized, mNormalizedCandidates);
+        assertEquals(0, mOriginal.size());
+        assertEquals(1, mNormalizedCandidates.size());
+        assertEquals("918327", mNormalized.toString(mNormalizedCandidates.start(0),
+                mNormalizedCandidates.start(0) + mNormalizedCandidates.length(0)));
+        // the span in the original text keeps the white spaces
+        assertEquals("91 83 27", text.substring(mNormalizedCandidates.originalStart(0),
+                mNormalizedCandidates.originalEnd(0)));
+    }
+
+    private static List<String> find(Pattern pattern, String text) {
+        List<String> result = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            result.add(matcher.group());
+        }
+        return result;
+    }
+
+    private List<String> originalCandidates(String text) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < mOriginal.size(); i++) {
+            assertEquals(mOriginal.start(i), mOriginal.originalStart(i));
+            result.add(text.substring(mOriginal.originalStart(i), mOriginal.originalEnd(i)));
+        }
+        return result;
+    }
+
+    private List<String> normalizedCandidates() {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < mNormalizedCandidates.size(); i++) {
+            int start = mNormalizedCandidates.start(i);
+            result.add(mNormalized.toString(start, start + mNormalizedCandidates.length(i)));
+        }
+        return result;
+    }
+}
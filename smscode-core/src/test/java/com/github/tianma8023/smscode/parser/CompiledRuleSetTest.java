@@ -0,0 +1,145 @@
+package com.github.tianma8023.smscode.parser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompiledRuleSetTest {
+
+    private static final class Rule implements CodeRule {
+        private final Long mId;
+        private final String mCompany;
+        private final String mCodeKeyword;
+        private final String mCodeRegex;
+        private final Integer mHitCount;
+
+        Rule(long id, String company, String codeKeyword, String codeRegex, Integer hitCount) {
+            mId = id;
+            mCompany = company;
+            mCodeKeyword = codeKeyword;
+            mCodeRegex = codeRegex;
+            mHitCount = hitCount;
+        }
+
+        @Override
+        public Long getId() {
+            return mId;
+        }
+
+        @Override
+        public String getCompany() {
+            return mCompany;
+        }
+
+        @Override
+        public String getCodeKeyword() {
+            return mCodeKeyword;
+        }
+
+        @Override
+        public String getCodeRegex() {
+            return mCodeRegex;
+        }
+
+        @Override
+        public Integer getHitCount() {
+            return mHitCount;
+        }
+    }
+
+    private static final String CONTENT = "【ExampleBank】Your login code 1234, transaction code 567890.";
+
+    @Test
+    public void listOrder() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(Arrays.asList(
+                new Rule(1, "ExampleBank", "code", "[0-9]{4}", null),
+                new Rule(2, "ExampleBank", "code", "[0-9]{6}", null)));
+        assertEquals("1234", ruleSet.match(CONTENT));
+
+        ruleSet = CompiledRuleSet.compile(Arrays.asList(
+                new Rule(2, "ExampleBank", "code", "[0-9]{6}", null),
+                new Rule(1, "ExampleBank", "code", "[0-9]{4}", null)));
+        assertEquals("567890", ruleSet.match(CONTENT));
+    }
+
+    @Test
+    public void hitCountFirst() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(Arrays.asList(
+                new Rule(1, "ExampleBank", "code", "[0-9]{4}", 1),
+                new Rule(2, "ExampleBank", "code", "[0-9]{6}", 5)));
+        assertEquals("567890", ruleSet.match(CONTENT));
+    }
+
+    @Test
+    public void hitCountGrows() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(Arrays.asList(
+                new Rule(1, "ExampleBank", "code", "[0-9]{4}", 0),
+                new Rule(2, "ExampleBank", "transaction", "[0-9]{6}", 0)));
+        List<Long> hits = new ArrayList<>();
+        assertEquals("1234", ruleSet.match(CONTENT, hits::add));
+        // only rule 2 matches this one, and its hit count grows beyond rule 1
+        String other = "ExampleBank transaction 567890";
+        assertEquals("567890", ruleSet.match(other, hits::add));
+        assertEquals("567890", ruleSet.match(other, hits::add));
+        assertEquals("567890", ruleSet.match(CONTENT, hits::add));
+        assertEquals(Arrays.asList(1L, 2L, 2L, 2L), hits);
+    }
+
+    @Test
+    public void matchWithoutHit() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(Arrays.asList(
+                new Rule(1, "ExampleBank", "code", "[0-9]{4}", 0),
+                new Rule(2, "ExampleBank", "transaction", "[0-9]{6}", 0)));
+        String other = "ExampleBank transaction 567890";
+        assertEquals("567890", ruleSet.matchWithoutHit(other));
+        assertEquals("567890", ruleSet.matchWithoutHit(other));
+        // rule 2 isn't promoted by the trial matches
+        assertEquals("1234", ruleSet.match(CONTENT));
+    }
+
+    @Test
+    public void companyAndKeywordRequired() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(Arrays.asList(
+                new Rule(1, "OtherBank", "code", "[0-9]{4}", 10),
+                new Rule(2, "examplebank", "LOGIN", "[0-9]{6}", null)));
+        // company and keyword are case insensitive, the regex isn't evaluated for rule 1
+        assertEquals("567890", ruleSet.match(CONTENT));
+        assertEquals("", ruleSet.match("ExampleBank 1234"));
+    }
+
+    @Test
+    public void unconditionalAndInvalidRules() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(Arrays.asList(
+                new Rule(1, "ExampleBank", "code", "[0-9", 10),
+                new Rule(2, "", "", "[0-9]{6}", null)));
+        assertEquals("567890", ruleSet.match(CONTENT));
+        assertEquals("", CompiledRuleSet.empty().match(CONTENT));
+    }
+
+    @Test
+    public void withRulesKeepsOrderAndHits() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(Arrays.asList(
+                new Rule(1, "ExampleBank", "code", "[0-9]{4}", 3),
+                new Rule(2, "ExampleBank", "code", "[0-9]{6}", 3)));
+        // the update carries stale statistics, the higher count is kept
+        ruleSet = ruleSet.withRules(Collections.singletonList(
+                new Rule(1, "ExampleBank", "code", "[0-9]{3}", 0)));
+        assertEquals(2, ruleSet.size());
+        assertEquals("123", ruleSet.match(CONTENT));
+
+        ruleSet = ruleSet.withRules(Collections.singletonList(
+                new Rule(3, "ExampleBank", "login", "[0-9]{2}", 100)));
+        assertEquals(3, ruleSet.size());
+        assertEquals("12", ruleSet.match(CONTENT));
+
+        ruleSet = ruleSet.withoutRules(Arrays.asList(
+                new Rule(3, "", "", "", null), new Rule(1, "", "", "", null)));
+        assertEquals(1, ruleSet.size());
+        assertEquals("567890", ruleSet.match(CONTENT));
+    }
+}
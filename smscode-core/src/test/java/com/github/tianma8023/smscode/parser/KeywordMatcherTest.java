@@ -0,0 +1,88 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeywordMatcherTest {
+
+    private static final String[] TEXTS = {
+            "",
+            "no keyword here",
+            "【某宝】验证码 482913",
+            "验证代码 1234 和验证码 5678",
+            "code Code CODE codecode",
+            "您的驗證碼為 238104，確認碼 7719",
+            "ushers she his hers",
+    };
+
+    @Test
+    public void compileLiterals() {
+        assertTrue(KeywordMatcher.compile("验证码|code") instanceof AhoCorasickKeywordMatcher);
+        assertTrue(KeywordMatcher.compile("(?i)code") instanceof RegexKeywordMatcher);
+        // an empty alternative matches everything
+        assertTrue(KeywordMatcher.compile("code|") instanceof RegexKeywordMatcher);
+    }
+
+    @Test
+    public void splitLiterals() {
+        assertEquals(Arrays.asList("验证码", "code"), KeywordMatcher.splitLiterals("验证码|code"));
+        assertNull(KeywordMatcher.splitLiterals("code.*"));
+        assertNull(KeywordMatcher.splitLiterals("|code"));
+        assertNull(KeywordMatcher.splitLiterals(""));
+    }
+
+    @Test
+    public void findFirstLeftmost() {
+        KeywordMatcher matcher = new AhoCorasickKeywordMatcher(new String[]{"验证码", "验证代码", "code"});
+        assertEquals("验证代码", matcher.findFirst("验证代码 1234 和验证码 5678"));
+        assertEquals("code", matcher.findFirst("code 1234 验证码"));
+        assertEquals("", matcher.findFirst("no keyword"));
+    }
+
+    @Test
+    public void findFirstEarlierKeywordWins() {
+        // both start at the same offset, the regex alternation picks the earlier one
+        assertEquals("he", new AhoCorasickKeywordMatcher(new String[]{"he", "hers"}).findFirst("ushers"));
+        assertEquals("hers", new AhoCorasickKeywordMatcher(new String[]{"hers", "he"}).findFirst("ushers"));
+    }
+
+    @Test
+    public void findAllOverlapping() {
+        KeywordMatcher matcher = new AhoCorasickKeywordMatcher(new String[]{"he", "she", "his", "hers"});
+        KeywordHits hits = matcher.findAll("ushers");
+        // "she" [1, 4), "he" [2, 4), "hers" [2, 6), sorted by start
+        assertEquals(3, hits.size());
+        assertEquals(1, hits.start(0));
+        assertEquals(4, hits.end(0));
+        assertEquals(2, hits.start(1));
+        assertEquals(2, hits.start(2));
+    }
+
+    @Test
+    public void sameAsRegexMatcher() {
+        String keywordsRegex = SmsCodeConst.VERIFICATION_KEYWORDS_REGEX;
+        KeywordMatcher matcher = KeywordMatcher.compile(keywordsRegex);
+        KeywordMatcher regexMatcher = new RegexKeywordMatcher(keywordsRegex);
+        for (String text : TEXTS) {
+            assertEquals(text, regexMatcher.containsAny(text), matcher.containsAny(text));
+            assertEquals(text, regexMatcher.findFirst(text), matcher.findFirst(text));
+        }
+    }
+
+    @Test
+    public void containsAny() {
+        KeywordMatcher matcher = new AhoCorasickKeywordMatcher(new String[]{"验证码", "code"});
+        assertTrue(matcher.containsAny("您的验证码"));
+        assertTrue(matcher.containsAny("the code"));
+        assertFalse(matcher.containsAny("the Code"));
+        assertFalse(matcher.containsAny(""));
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.tianma8023.smscode.parser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NormalizedTextTest {
+
+    private static NormalizedText normalize(String text) {
+        NormalizedText normalized = new NormalizedText();
+        normalized.reset(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!NormalizedText.isWhiteSpace(c)) {
+                normalized.append(c, i);
+            }
+        }
+        return normalized;
+    }
+
+    @Test
+    public void offsetMap() {
+        String text = " 91 83\t27\n";
+        NormalizedText normalized = normalize(text);
+        assertEquals("918327", normalized.toString());
+        int[] expectedOffsets = {1, 2, 4, 5, 7, 8};
+        for (int i = 0; i < expectedOffsets.length; i++) {
+            assertEquals(expectedOffsets[i], normalized.originalOffset(i));
+            assertEquals(text.charAt(expectedOffsets[i]), normalized.charAt(i));
+        }
+        assertEquals("8327", normalized.toString(2, 6));
+        assertEquals("83", normalized.subSequence(2, 4).toString());
+    }
+
+    @Test
+    public void whiteSpaces() {
+        // same as \s in regex
+        for (char c : new char[]{' ', '\t', '\n', '\u000B', '\f', '\r'}) {
+            assertTrue(NormalizedText.isWhiteSpace(c));
+            assertTrue(String.valueOf(c).matches("\\s"));
+        }
+        assertFalse(NormalizedText.isWhiteSpace('　'));
+        assertFalse(NormalizedText.isWhiteSpace('a'));
+    }
+
+    @Test
+    public void growAndReuse() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i % 10).append(' ');
+        }
+        NormalizedText normalized = new NormalizedText();
+        normalized.reset(0);
+        for (int i = 0; i < sb.length(); i += 2) {
+            normalized.append(sb.charAt(i), i);
+        }
+        assertEquals(1000, normalized.length());
+        assertEquals(1998, normalized.originalOffset(999));
+
+        // reset keeps the buffers but drops the content
+        normalized.reset(4);
+        normalized.append('x', 3);
+        assertEquals(1, normalized.length());
+        assertEquals("x", normalized.toString());
+        assertEquals(3, normalized.originalOffset(0));
+    }
+
+    @Test
+    public void outOfBounds() {
+        NormalizedText normalized = normalize("ab");
+        try {
+            normalized.charAt(2);
+            fail("charAt beyond the length");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            normalized.toString(1, 3);
+            fail("toString beyond the length");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex based default rule which {@link SmsCodeParser} replaces, kept as the reference of
+ * the expected results.
+ */
+final class RegexSmsCodeParser {
+
+    private static final int LEVEL_DIGITAL_6 = 4;
+    private static final int LEVEL_DIGITAL_4 = 3;
+    private static final int LEVEL_DIGITAL_OTHERS = 2;
+    private static final int LEVEL_TEXT = 1;
+    private static final int LEVEL_CHARACTER = 0;
+    private static final int LEVEL_NONE = -1;
+
+    private final String mKeywordsRegex;
+
+    RegexSmsCodeParser(String keywordsRegex) {
+        mKeywordsRegex = keywordsRegex;
+    }
+
+    String parse(String content) {
+        String keyword = parseKeyword(content);
+        if (keyword.isEmpty()) {
+            return "";
+        }
+        if (containsChinese(content)) {
+            return getSmsCodeCN(keyword, content);
+        }
+        return getSmsCodeEN(keyword, content);
+    }
+
+    private String parseKeyword(String content) {
+        Matcher matcher = Pattern.compile(mKeywordsRegex).matcher(content);
+        if (matcher.find()) {
+            return matcher.group();
+        }
+        return "";
+    }
+
+    private static boolean containsChinese(String text) {
+        return Pattern.compile("[一-龥]|。").matcher(text).find();
+    }
+
+    private static String getSmsCodeCN(String keyword, String content) {
+        String codeRegex = "(?<![a-zA-Z0-9])[a-zA-Z0-9]{4,8}(?![a-zA-Z0-9])";
+        String smsCode = getSmsCode(codeRegex, keyword, removeAllWhiteSpaces(content));
+        if (smsCode.isEmpty()) {
+            smsCode = getSmsCode(codeRegex, keyword, content);
+        }
+        return smsCode;
+    }
+
+    private static String getSmsCodeEN(String keyword, String content) {
+        String codeRegex = "(?<![0-9])[0-9]{4,8}(?![0-9])";
+        String smsCode = getSmsCode(codeRegex, keyword, content);
+        if (smsCode.isEmpty()) {
+            smsCode = getSmsCode(codeRegex, keyword, removeAllWhiteSpaces(content));
+        }
+        return smsCode;
+    }
+
+    private static String removeAllWhiteSpaces(String content) {
+        return content.replaceAll("\\s*", "");
+    }
+
+    private static String getSmsCode(String codeRegex, String keyword, String content) {
+        Matcher m = Pattern.compile(codeRegex).matcher(content);
+        List<String> possibleCodes = new ArrayList<>();
+        while (m.find()) {
+            possibleCodes.add(m.group());
+        }
+        if (possibleCodes.isEmpty()) {
+            return "";
+        }
+
+        List<String> filteredCodes = new ArrayList<>();
+        for (String possibleCode : possibleCodes) {
+            if (isNearToKeyword(keyword, possibleCode, content)) {
+                filteredCodes.add(possibleCode);
+            }
+        }
+        if (filteredCodes.isEmpty()) {
+            filteredCodes = possibleCodes;
+        }
+
+        int maxMatchLevel = LEVEL_NONE;
+        int minDistance = content.length();
+        String smsCode = "";
+        for (String filteredCode : filteredCodes) {
+            final int curLevel = getMatchLevel(filteredCode);
+            if (curLevel > maxMatchLevel) {
+                maxMatchLevel = curLevel;
+                minDistance = distanceToKeyword(keyword, filteredCode, content);
+                smsCode = filteredCode;
+            } else if (curLevel == maxMatchLevel) {
+                int curDistance = distanceToKeyword(keyword, filteredCode, content);
+                if (curDistance < minDistance) {
+                    minDistance = curDistance;
+                    smsCode = filteredCode;
+                }
+            }
+        }
+        return smsCode;
+    }
+
+    private static int getMatchLevel(String matchedStr) {
+        if (matchedStr.matches("^[0-9]{6}$"))
+            return LEVEL_DIGITAL_6;
+        if (matchedStr.matches("^[0-9]{4}$"))
+            return LEVEL_DIGITAL_4;
+        if (matchedStr.matches("^[0-9]*$"))
+            return LEVEL_DIGITAL_OTHERS;
+        if (matchedStr.matches("^[a-zA-Z]*$"))
+            return LEVEL_CHARACTER;
+        return LEVEL_TEXT;
+    }
+
+    private static boolean isNearToKeyword(String keyword, String possibleCode, String content) {
+        int beginIndex = 0, endIndex = content.length() - 1;
+        int curIndex = content.indexOf(possibleCode);
+        int strLength = possibleCode.length();
+        int magicNumber = 30;
+        if (curIndex - magicNumber > 0) {
+            beginIndex = curIndex - magicNumber;
+        }
+        if (curIndex + strLength + magicNumber < endIndex) {
+            endIndex = curIndex + strLength + magicNumber;
+        }
+        return content.substring(beginIndex, endIndex).contains(keyword);
+    }
+
+    private static int distanceToKeyword(String keyword, String possibleCode, String content) {
+        int keywordIdx = content.indexOf(keyword);
+        int possibleCodeIdx = content.indexOf(possibleCode);
+        return Math.abs(keywordIdx - possibleCodeIdx);
+    }
+}
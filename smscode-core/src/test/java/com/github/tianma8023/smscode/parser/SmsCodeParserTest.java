@@ -0,0 +1,114 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SmsCodeParserTest {
+
+    // {body, expected SMS code}, taken from the benchmark corpus
+    private static final String[][] CORPUS_CASES = {
+            {"【某宝】验证码 482913，用于身份验证，5分钟内有效，请勿泄露。", "482913"},
+            {"【某银行】您尾号0000的账户正在进行网上支付，动态密码为 730215，金额 128.50 元。如非本人操作请致电客服。", "730215"},
+            {"【某出行】您的登录验证码是 6624，请在10分钟内填写，切勿告诉他人。", "6624"},
+            {"[某视频] 校验码：A7K2Q9，您正在绑定手机号，有效期 15 分钟。", "A7K2Q9"},
+            {"【某外卖】验证码 91 83 27，请勿将验证码转发或告知他人。", "918327"},
+            {"【某云】您正在进行敏感操作，确认码为：508811。订单号 202310171234567 已创建，如非本人操作请忽略。", "508811"},
+            {"您的短信口令为 3321，订单 88000123 将于 2023-10-17 12:00 过期。", "3321"},
+            {"【某网盘】动态码 440921\n请在页面中输入以完成登录。\n客服电话 95000", "440921"},
+            {"【某快递】您的快递已到达小区驿站，取件码 12-3-4567，请于今日 20:00 前取件。", ""},
+            {"周末一起吃饭吗？地址在某某路 1024 号，晚上 7 点见。", ""},
+            {"【某銀行】您的驗證碼為 238104，請於 5 分鐘內輸入，切勿提供給他人。", "238104"},
+            {"[某購物] 動態碼：7719，您正在變更密碼，如非本人操作請立即聯絡客服。", "7719"},
+            {"【某電信】確認碼 55 20 91，用於門號驗證，有效期限 10 分鐘。", "552091"},
+            {"您的認證碼是 K3P9X2，請勿轉傳。", "K3P9X2"},
+            {"【某物流】您的包裹 TW1234567890 已送達超商，請攜帶證件於 7 日內取件。", ""},
+            {"Your verification code is 583920. It expires in 10 minutes. Do not share this code with anyone.", "583920"},
+            {"[ExampleApp] 7731 is your login code. If you did not request it, ignore this message.", "7731"},
+            {"G-481122 is your Example verification code.", "481122"},
+            {"Use code 90 21 45 to sign in to your account. Ref 20231017.", "20231017"},
+            {"ExampleBank: One-time code 2048 for a payment of USD 120.00 at Shop 1234. Never share this CODE.", "2048"},
+            {"Your Example account security code: 661204\nValid for 5 minutes.\nReply STOP to opt out.", "661204"},
+            {"Your order 1234-5678 has shipped and will arrive on 10/21. Track at example.com/t/1234.", ""},
+            {"Hey, are we still on for lunch tomorrow at 12?", ""},
+    };
+
+    // messages which exercise the edge cases of candidates and keyword distance
+    private static final String[] EDGE_CASES = {
+            "",
+            "code",
+            "验证码",
+            "code 123 4567 89",
+            "code:12345678901",
+            "Code 1234, code 123456, CODE 12345",
+            "验证码 abcd，另一个验证码 ab12，还有 1234",
+            "您的验证码\t12\n34\r56，请勿泄露",
+            "The code is 4321. Your account number is 12345678, your code expires in 5 min.",
+            "1234 is not the code, far away from the keyword and more and more and more text 567890",
+    };
+
+    // {body, expected SMS code}, the keyword is repeated and the regex parser measures from its first occurrence
+    private static final String[][] REPEATED_KEYWORD_CASES = {
+            {"Order 4821 needs a code to sign in. If you did not request it, ignore this message. Your code is 7730.", "7730"},
+            {"您的验证码已发送。订单 4821 已支付，如需登录新设备，请输入验证码 7730。", "7730"},
+    };
+
+    private final SmsCodeParser mParser = new SmsCodeParser(SmsCodeConst.VERIFICATION_KEYWORDS_REGEX);
+
+    @Test
+    public void parseCorpus() {
+        for (String[] sample : CORPUS_CASES) {
+            assertEquals(sample[0], sample[1], mParser.parse(sample[0]));
+        }
+    }
+
+    @Test
+    public void sameAsRegexParser() {
+        assertSameAsRegexParser(SmsCodeConst.VERIFICATION_KEYWORDS_REGEX);
+    }
+
+    @Test
+    public void sameAsRegexParserWithRegexKeywords() {
+        // keywords with regex syntax aren't matched by Aho-Corasick
+        assertSameAsRegexParser("验证码|驗證碼|(?i)code");
+    }
+
+    @Test
+    public void nearestOfRepeatedKeywords() {
+        RegexSmsCodeParser regexParser = new RegexSmsCodeParser(SmsCodeConst.VERIFICATION_KEYWORDS_REGEX);
+        for (String[] sample : REPEATED_KEYWORD_CASES) {
+            assertEquals(sample[0], sample[1], mParser.parse(sample[0]));
+            // the code near to the first keyword is picked by the regex parser
+            assertEquals(sample[0], "4821", regexParser.parse(sample[0]));
+        }
+    }
+
+    private static void assertSameAsRegexParser(String keywordsRegex) {
+        SmsCodeParser parser = new SmsCodeParser(keywordsRegex);
+        RegexSmsCodeParser expectedParser = new RegexSmsCodeParser(keywordsRegex);
+        for (String[] sample : CORPUS_CASES) {
+            assertEquals(sample[0], expectedParser.parse(sample[0]), parser.parse(sample[0]));
+        }
+        for (String content : EDGE_CASES) {
+            assertEquals(content, expectedParser.parse(content), parser.parse(content));
+        }
+    }
+
+    @Test
+    public void containsCodeKeywords() {
+        assertTrue(mParser.containsCodeKeywords("Your code is 1234"));
+        assertTrue(mParser.containsCodeKeywords("您的驗證碼為 1234"));
+        assertFalse(mParser.containsCodeKeywords("Your balance is 1,024.00 USD"));
+    }
+
+    @Test
+    public void parseCompany() {
+        assertEquals("某宝", SmsCodeParser.parseCompany("【某宝】验证码 482913"));
+        assertEquals("某视频 某云", SmsCodeParser.parseCompany("[某视频] 校验码 A7K2Q9【某云】"));
+        assertEquals("", SmsCodeParser.parseCompany("验证码 482913"));
+    }
+}